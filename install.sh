@@ -1,2 +1,15 @@
 #!/bin/sh
-cp build/libs/StarPi-all.jar runCamera /home/pi
+cp build/libs/StarPi-all.jar runCamera startupBenchmark /home/pi
+
+# Install the trimmed runtime from "./gradlew runtimeImage" if it was built, then train its
+# class data sharing archive by starting once and exiting after the first result. The cameras
+# have to be free for that, so stop the camera service first.
+if [ -d build/runtime ]; then
+    rm -rf /home/pi/runtime /home/pi/starpi.jsa /home/pi/starpi.classlist
+    cp -r build/runtime /home/pi/runtime
+    cd /home/pi
+    env LD_LIBRARY_PATH=/usr/local/frc/lib runtime/bin/java -Xshare:off \
+        -XX:DumpLoadedClassList=starpi.classlist -Dstarpi.startupTest=60 -jar StarPi-all.jar
+    runtime/bin/java -Xshare:dump -XX:SharedClassListFile=starpi.classlist \
+        -XX:SharedArchiveFile=starpi.jsa -cp StarPi-all.jar
+fi
@@ -0,0 +1,98 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Compares the polling and edge DistanceMonitor modes on a simulated sensor.
+ *
+ * <p>The time per measurement is mostly the echo itself. What differs is the CPU time the measuring
+ * thread burns and how far the distances are off, which are printed after every iteration. The
+ * edge jitter only shows in EDGE mode, as errors and, with unordered edges, as timeouts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DistanceMonitorBenchmark {
+
+    @Param({"POLL", "EDGE"})
+    public DistanceMonitor.Mode mode;
+
+    // A target at 1 m gives an echo of about 5.9 ms
+    @Param({"100"})
+    public double distance;
+
+    // How late the edges are reported, like an interrupt thread
+    @Param({"0", "50"})
+    public double latencyMicros;
+
+    // How much later than that each edge may be reported, at random
+    @Param({"0", "200"})
+    public double edgeJitterMicros;
+
+    // Report each edge on its own pool thread, like pi4j's pin listeners, so they can be reordered
+    @Param({"false", "true"})
+    public boolean unordered;
+
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private SimulatedSensorPins pins;
+    private DistanceMonitor monitor;
+
+    private long measurements;
+    private long timeouts;
+    private double errorSum;
+    private double errorSquaredSum;
+    private long cpuStart;
+
+    @Setup
+    public void setup() {
+        pins = new SimulatedSensorPins(distance);
+        pins.setLatencyMicros(latencyMicros);
+        pins.setEdgeJitterMicros(edgeJitterMicros);
+        pins.setUnordered(unordered);
+        monitor = new DistanceMonitor(pins, mode);
+    }
+
+    @TearDown
+    public void tearDown() {
+        monitor.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        measurements = 0;
+        timeouts = 0;
+        errorSum = 0;
+        errorSquaredSum = 0;
+        cpuStart = threads.getCurrentThreadCpuTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        // Runs on the benchmark thread, so this is the CPU time of the measurements
+        long cpu = threads.getCurrentThreadCpuTime() - cpuStart;
+        double mean = errorSum / Math.max(measurements, 1);
+        double deviation = Math.sqrt(Math.max(errorSquaredSum / Math.max(measurements, 1) - mean * mean, 0));
+        System.out.printf("%n%s: %d measurements, %d timeouts, error %.3f cm +/- %.3f cm, %.1f us CPU each%n",
+            mode, measurements, timeouts, mean, deviation, cpu / 1e3 / Math.max(measurements + timeouts, 1));
+    }
+
+    @Benchmark
+    public float measureDistance() {
+        try {
+            float measured = monitor.measureDistance();
+            double error = measured - distance;
+            measurements++;
+            errorSum += error;
+            errorSquaredSum += error * error;
+            return measured;
+        }
+        catch (TimeoutException ex) {
+            timeouts++;
+            return -1;
+        }
+    }
+
+}
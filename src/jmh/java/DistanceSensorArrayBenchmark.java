@@ -0,0 +1,106 @@
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Measures how fast a DistanceSensorArray can read simulated sensors that hear each other.
+ *
+ * <p>Every sensor's burst also reflects off a wall 3 m away. With the full range the array waits
+ * for that reflection to pass before the next sensor listens. With the range capped short of the
+ * wall the turns are quicker, but the wall's reflections cut other sensors' echoes short. The
+ * readings per second, crosstalks and wrong readings are printed after every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DistanceSensorArrayBenchmark {
+
+    // The distance to the wall behind every target
+    private static final double WALL_DISTANCE = 300;
+    // How far off a reading can be and still count as right, well over the edge latency
+    private static final double TOLERANCE = 5;
+
+    @Param({"1", "2", "4"})
+    public int sensors;
+
+    // 400 cm covers the wall, 200 cm only the targets
+    @Param({"400", "200"})
+    public double maxRangeCm;
+
+    private SimulatedSensorPins[] pins;
+    private double[] distances;
+    private DistanceSensorArray array;
+
+    private long readings;
+    private long wrong;
+    private long timeouts;
+    private long crosstalkStart;
+    private long iterationStart;
+
+    @Setup
+    public void setup() {
+        SimulatedSensorPins.Room room = new SimulatedSensorPins.Room();
+        pins = new SimulatedSensorPins[sensors];
+        distances = new double[sensors];
+        array = new DistanceSensorArray();
+        for (int i = 0; i < sensors; i++) {
+            distances[i] = 120 + 30 * i;
+            pins[i] = new SimulatedSensorPins(distances[i], room);
+            pins[i].setFarDistance(WALL_DISTANCE);
+            DistanceMonitor monitor = new DistanceMonitor(pins[i], DistanceMonitor.Mode.EDGE);
+            array.add(new DistanceSampler("Sensor " + i, monitor, 60, 5, 250, maxRangeCm, null));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        array.close();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        readings = 0;
+        wrong = 0;
+        timeouts = timeouts();
+        crosstalkStart = crosstalks();
+        iterationStart = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        double seconds = (System.nanoTime() - iterationStart) / 1e9;
+        System.out.printf("%n%d sensors, %.0f cm range: %.1f readings/s, %d wrong, %d crosstalks, %d timeouts%n",
+            sensors, maxRangeCm, readings / seconds, wrong, crosstalks() - crosstalkStart, timeouts() - timeouts);
+    }
+
+    private long crosstalks() {
+        long sum = 0;
+        for (SimulatedSensorPins p : pins) {
+            sum += p.getCrosstalks();
+        }
+        return sum;
+    }
+
+    private long timeouts() {
+        long sum = 0;
+        for (DistanceSampler sensor : array.getSensors()) {
+            sum += sensor.getTimeouts();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public float sampleNext() throws InterruptedException {
+        DistanceSampler sensor = array.sampleNext();
+        float[] distance = new float[1];
+        sensor.getRing().copyNewest(distance, null, 1);
+        int i = array.getSensors().indexOf(sensor);
+        readings++;
+        if (!(Math.abs(distance[0] - distances[i]) <= TOLERANCE)) {
+            wrong++;
+        }
+        return distance[0];
+    }
+
+}
@@ -0,0 +1,161 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.*;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Compares the OpenCV contour measurements with ContourPoints on the contours found in the GRIP
+ * sample images.
+ *
+ * <p>Setup checks that both give the same area, bounding box, solidity and minimum area
+ * rectangle for every contour, so a mismatch fails the benchmark instead of going unnoticed.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeometryBenchmark {
+
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    private List<MatOfPoint> contours;
+    private ContourPoints points;
+    private MatOfPoint2f contour2f;
+    private MatOfInt hullIndexes;
+    private RotatedRect rect;
+    private int[] box;
+    private int contourIndex;
+
+    @Setup
+    public void setup() {
+        GripFrames.initBrain();
+        LinePipeline pipeline = new LinePipeline();
+        contours = new ArrayList<>();
+        for (Mat frame : GripFrames.load(resolution)) {
+            pipeline.process(frame);
+            for (MatOfPoint contour : pipeline.findContoursOutput()) {
+                if (contour.rows() >= 3) {
+                    MatOfPoint copy = new MatOfPoint();
+                    contour.copyTo(copy);
+                    contours.add(copy);
+                }
+            }
+        }
+        pipeline.release();
+
+        points = new ContourPoints();
+        contour2f = new MatOfPoint2f();
+        hullIndexes = new MatOfInt();
+        rect = new RotatedRect();
+        box = new int[4];
+        crossValidate();
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (MatOfPoint contour : contours) {
+            contour.release();
+        }
+        contour2f.release();
+        hullIndexes.release();
+    }
+
+    private void crossValidate() {
+        for (int i = 0; i < contours.size(); i++) {
+            MatOfPoint contour = contours.get(i);
+            points.read(contour);
+
+            double area = Imgproc.contourArea(contour);
+            check(i, "area", Math.abs(points.area() - area) < 1e-6);
+
+            Rect boundingRect = Imgproc.boundingRect(contour);
+            points.boundingBox(box);
+            check(i, "bounding box", box[0] == boundingRect.x && box[1] == boundingRect.y
+                && box[2] == boundingRect.width && box[3] == boundingRect.height);
+
+            // Flat contours have no hull area, which OpenCV divides by anyway
+            double solidity = openCvSolidity(contour);
+            check(i, "solidity", Double.isNaN(solidity) || Double.isInfinite(solidity)
+                || Math.abs(points.solidity() - solidity) < 1e-6);
+
+            RotatedRect expected = Vision.findLineRect(contour, contour2f);
+            RotatedRect actual = points.minAreaRect(rect);
+            double scale = Math.max(1, expected.size.area());
+            check(i, "min area rect area", Math.abs(actual.size.area() - expected.size.area()) < 1e-3 * scale);
+            check(i, "min area rect center", Math.abs(actual.center.x - expected.center.x) < 0.01
+                && Math.abs(actual.center.y - expected.center.y) < 0.01);
+            // Equal rectangles can be described two ways at the edges of the angle range, but Vision sees them the same
+            double expectedAngle = Vision.findLineAngle(expected, expected.center.x, expected.center.y);
+            double actualAngle = Vision.findLineAngle(actual, actual.center.x, actual.center.y);
+            check(i, "min area rect angle", Math.abs(Math.IEEEremainder(actualAngle - expectedAngle, 180)) < 0.01
+                || expected.size.area() < 1e-6);
+        }
+        System.out.println(contours.size() + " contours match OpenCV at " + resolution);
+    }
+
+    private void check(int index, String what, boolean matches) {
+        if (!matches) {
+            throw new IllegalStateException("ContourPoints " + what + " does not match OpenCV for contour " + index
+                + " at " + resolution + ": " + contours.get(index).dump());
+        }
+    }
+
+    private double openCvSolidity(MatOfPoint contour) {
+        // The same steps as the GRIP generated filter
+        Imgproc.convexHull(contour, hullIndexes);
+        MatOfPoint hull = new MatOfPoint();
+        hull.create((int) hullIndexes.size().height, 1, CvType.CV_32SC2);
+        for (int j = 0; j < hullIndexes.size().height; j++) {
+            int index = (int) hullIndexes.get(j, 0)[0];
+            double[] point = new double[] {contour.get(index, 0)[0], contour.get(index, 0)[1]};
+            hull.put(j, 0, point);
+        }
+        double solidity = 100 * Imgproc.contourArea(contour) / Imgproc.contourArea(hull);
+        hull.release();
+        return solidity;
+    }
+
+    private MatOfPoint nextContour() {
+        MatOfPoint contour = contours.get(contourIndex);
+        contourIndex = (contourIndex + 1) % contours.size();
+        return contour;
+    }
+
+    @Benchmark
+    public RotatedRect openCvMinAreaRect() {
+        return Vision.findLineRect(nextContour(), contour2f);
+    }
+
+    @Benchmark
+    public RotatedRect javaMinAreaRect() {
+        return Vision.findLineRect(nextContour(), points, rect);
+    }
+
+    @Benchmark
+    public double openCvSolidity() {
+        return openCvSolidity(nextContour());
+    }
+
+    @Benchmark
+    public double javaSolidity() {
+        points.read(nextContour());
+        return points.solidity();
+    }
+
+    @Benchmark
+    public Rect openCvBoundingRect() {
+        return Imgproc.boundingRect(nextContour());
+    }
+
+    @Benchmark
+    public int[] javaBoundingRect() {
+        points.read(nextContour());
+        points.boundingBox(box);
+        return box;
+    }
+
+}
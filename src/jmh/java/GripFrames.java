@@ -0,0 +1,70 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+import org.opencv.core.*;
+import org.opencv.imgcodecs.*;
+import org.opencv.imgproc.*;
+
+
+/**
+ * Loads the sample images in the GRIP directory so the vision code can be benchmarked without a camera.
+ */
+public class GripFrames {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * Gets the directory holding the GRIP sample images, set by build.gradle.
+     */
+    public static File getGripDir() {
+        return new File(System.getProperty("grip.dir", "GRIP"));
+    }
+
+    /**
+     * Loads every CargoLine sample image, resized to the given resolution (e.g. "160x120").
+     */
+    public static List<Mat> load(String resolution) {
+        String[] dims = resolution.split("x");
+        Size size = new Size(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+
+        File[] files = getGripDir().listFiles((dir, name) -> name.startsWith("Cargo") && name.endsWith(".jpg"));
+        if (files == null || files.length == 0) {
+            throw new IllegalStateException("No sample images found in " + getGripDir().getAbsolutePath());
+        }
+        Arrays.sort(files);
+
+        List<Mat> frames = new ArrayList<>();
+        for (File file : files) {
+            Mat image = Imgcodecs.imread(file.getPath());
+            if (image.empty()) {
+                throw new IllegalStateException("Could not read " + file.getPath());
+            }
+            Mat frame = new Mat();
+            Imgproc.resize(image, frame, size, 0, 0, Imgproc.INTER_AREA);
+            image.release();
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * Points the Brain's HSV threshold entries at a local NetworkTables instance holding the default values.
+     */
+    public static void initBrain() {
+        NetworkTable hsvTable = NetworkTableInstance.create().getTable("Shuffleboard/Vision/HSV Thresholds");
+        Brain.hueMinEntry = hsvTable.getEntry("Hue Minimum");
+        Brain.hueMaxEntry = hsvTable.getEntry("Hue Maximum");
+        Brain.saturationMinEntry = hsvTable.getEntry("Saturation Minimum");
+        Brain.saturationMaxEntry = hsvTable.getEntry("Saturation Maximum");
+        Brain.valueMinEntry = hsvTable.getEntry("Value Minimum");
+        Brain.valueMaxEntry = hsvTable.getEntry("Value Maximum");
+    }
+
+}
@@ -0,0 +1,210 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Benchmarks LinePipeline and the Vision line geometry on the GRIP sample images.
+ *
+ * <p>Each invocation handles one frame, cycling through every sample image so the
+ * results average over the different line distances.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LinePipelineBenchmark {
+
+    // 160x120 is the resolution in rPi/frc.json
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    private LinePipeline pipeline;
+    private LinePipeline regionPipeline;
+    private LinePipeline pyramidPipeline;
+    private FrameChangeDetector changeDetector;
+    private LineCandidates candidates;
+    private List<ArrayList<MatOfPoint>> filteredContours;
+    private List<Mat> frames;
+    private List<Mat> thresholds;
+    private List<ArrayList<MatOfPoint>> contours;
+    private List<MatOfPoint> lines;
+    private List<Rect> regions;
+    private ArrayList<MatOfPoint> noiseContours;
+    private Mat thresholdOutput;
+    private MatOfPoint2f contour2f;
+    private ArrayList<MatOfPoint> contoursOutput;
+    private int frameIndex;
+    private int lineIndex;
+
+    @Setup
+    public void setup() {
+        GripFrames.initBrain();
+        pipeline = new LinePipeline();
+        frames = GripFrames.load(resolution);
+        thresholdOutput = new Mat();
+        contour2f = new MatOfPoint2f();
+        contoursOutput = new ArrayList<>();
+
+        // Capture the input of every stage so each one can be run on its own
+        thresholds = new ArrayList<>();
+        contours = new ArrayList<>();
+        lines = new ArrayList<>();
+        regions = new ArrayList<>();
+        filteredContours = new ArrayList<>();
+        for (Mat frame : frames) {
+            pipeline.process(frame);
+            thresholds.add(pipeline.hsvThresholdOutput().clone());
+            // The pipeline releases its contours on the next frame, so keep copies
+            contours.add(copyContours(pipeline.findContoursOutput()));
+            lines.addAll(copyContours(pipeline.filterContoursOutput()));
+            filteredContours.add(copyContours(pipeline.filterContoursOutput()));
+
+            // The region Vision would search in the next frame if the line stayed put
+            Rect region = null;
+            if (pipeline.filterContoursOutput().size() == 1) {
+                RegionTracker tracker = new RegionTracker(0.5, 2.0, 3);
+                tracker.hit(Vision.findLineRect(pipeline.filterContoursOutput().get(0), contour2f).boundingRect());
+                region = tracker.getRegion().clone();
+            }
+            regions.add(region);
+        }
+        regionPipeline = new LinePipeline();
+        changeDetector = new FrameChangeDetector(2.0, 15);
+        candidates = new LineCandidates(3);
+
+        // Search for the contours at 160x120 whatever the resolution, as frc.json has been running
+        pyramidPipeline = new LinePipeline();
+        int levels = 0;
+        while ((frames.get(0).cols() >> (levels + 1)) >= 160) {
+            levels++;
+        }
+        pyramidPipeline.setPyramidLevels(levels);
+        for (Mat frame : frames) {
+            pipeline.process(frame);
+            pyramidPipeline.process(frame);
+            if (pipeline.filterContoursOutput().size() != pyramidPipeline.filterContoursOutput().size()) {
+                throw new IllegalStateException("Pyramid mode found " + pyramidPipeline.filterContoursOutput().size()
+                    + " lines instead of " + pipeline.filterContoursOutput().size() + " at " + resolution);
+            }
+        }
+        Mat noise = new Mat(frames.get(0).size(), CvType.CV_8UC1);
+        Core.randu(noise, 0, 256);
+        Imgproc.threshold(noise, noise, 200, 255, Imgproc.THRESH_BINARY);
+        noiseContours = new ArrayList<>();
+        pipeline.findContours(noise, false, noiseContours);
+        pipeline.getMatPool().recycle();
+        noise.release();
+
+        if (lines.isEmpty()) {
+            throw new IllegalStateException("No lines found in the sample images at " + resolution);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.release();
+        regionPipeline.release();
+        pyramidPipeline.release();
+        changeDetector.release();
+    }
+
+    private static ArrayList<MatOfPoint> copyContours(List<MatOfPoint> contours) {
+        ArrayList<MatOfPoint> copies = new ArrayList<>();
+        for (MatOfPoint contour : contours) {
+            MatOfPoint copy = new MatOfPoint();
+            contour.copyTo(copy);
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private int nextFrame() {
+        int index = frameIndex;
+        frameIndex = (frameIndex + 1) % frames.size();
+        return index;
+    }
+
+    @Benchmark
+    public ArrayList<MatOfPoint> process() {
+        pipeline.process(frames.get(nextFrame()));
+        return pipeline.filterContoursOutput();
+    }
+
+    @Benchmark
+    public ArrayList<MatOfPoint> processRegion() {
+        // Frames without a single line fall back to the whole frame, as they would in Vision
+        int index = nextFrame();
+        regionPipeline.setRegion(regions.get(index));
+        regionPipeline.process(frames.get(index));
+        return regionPipeline.filterContoursOutput();
+    }
+
+    @Benchmark
+    public ArrayList<MatOfPoint> processPyramid() {
+        pyramidPipeline.process(frames.get(nextFrame()));
+        return pyramidPipeline.filterContoursOutput();
+    }
+
+    @Benchmark
+    public boolean detectChange() {
+        // What a skipped frame costs instead of process
+        return changeDetector.isUnchanged(frames.get(nextFrame()), false);
+    }
+
+    @Benchmark
+    public Mat hsvThreshold() {
+        pipeline.hsvThreshold(frames.get(nextFrame()), Brain.getHsvThresholds(), thresholdOutput);
+        return thresholdOutput;
+    }
+
+    @Benchmark
+    public ArrayList<MatOfPoint> findContours() {
+        pipeline.findContours(thresholds.get(nextFrame()), false, contoursOutput);
+        pipeline.getMatPool().recycle();
+        return contoursOutput;
+    }
+
+    @Benchmark
+    public ArrayList<MatOfPoint> filterContours() {
+        pipeline.filterContours(contours.get(nextFrame()), contoursOutput);
+        return contoursOutput;
+    }
+
+    @Benchmark
+    public ArrayList<MatOfPoint> filterNoiseContours() {
+        // A frame full of speckles that should all be rejected
+        pipeline.filterContours(noiseContours, contoursOutput);
+        return contoursOutput;
+    }
+
+    @Benchmark
+    public double rankCandidates() {
+        // Also scores against the previous frame's line, as Vision does
+        Mat frame = frames.get(0);
+        candidates.rank(filteredContours.get(nextFrame()), frame.cols(), frame.rows());
+        if (candidates.getCount() > 0) {
+            candidates.setPrevious(0);
+            return candidates.get(0, LineCandidates.SCORE);
+        }
+        return 0;
+    }
+
+    @Benchmark
+    public void lineGeometry(Blackhole bh) {
+        MatOfPoint line = lines.get(lineIndex);
+        lineIndex = (lineIndex + 1) % lines.size();
+
+        RotatedRect rotRect = Vision.findLineRect(line, contour2f);
+        Rect boundRect = rotRect.boundingRect();
+        double centerX = boundRect.x + (boundRect.width / 2);
+        double centerY = boundRect.y + (boundRect.height / 2);
+        bh.consume(rotRect.size.area());
+        bh.consume(Vision.findLineAngle(rotRect, centerX, centerY));
+    }
+
+}
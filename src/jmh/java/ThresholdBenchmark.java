@@ -0,0 +1,85 @@
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.*;
+import org.openjdk.jmh.annotations.*;
+
+
+/**
+ * Compares the OpenCV and lookup table HSV threshold engines on the GRIP sample images.
+ *
+ * <p>Setup checks that the 8-bit lookup table matches OpenCV pixel for pixel on every image,
+ * and reports how many pixels differ for the quantized tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ThresholdBenchmark {
+
+    @Param({"160x120", "320x240", "640x480"})
+    public String resolution;
+
+    // "opencv" or "lookup-<bits per channel>"
+    @Param({"opencv", "lookup-8", "lookup-6"})
+    public String engine;
+
+    private LinePipeline pipeline;
+    private List<Mat> frames;
+    private HsvThresholds thresholds;
+    private Mat output;
+    private int frameIndex;
+
+    @Setup
+    public void setup() {
+        GripFrames.initBrain();
+        frames = GripFrames.load(resolution);
+        thresholds = Brain.getHsvThresholds();
+        output = new Mat();
+
+        pipeline = new LinePipeline();
+        if (engine.startsWith("lookup-")) {
+            int bits = Integer.parseInt(engine.substring("lookup-".length()));
+            pipeline.setThresholdEngine(LinePipeline.ThresholdEngine.LOOKUP, bits);
+            compareWithOpenCv(bits);
+        }
+    }
+
+    private void compareWithOpenCv(int bits) {
+        LinePipeline reference = new LinePipeline();
+        Mat expected = new Mat();
+        Mat diff = new Mat();
+        long pixels = 0;
+        long mismatches = 0;
+        for (Mat frame : frames) {
+            reference.hsvThreshold(frame, thresholds, expected);
+            pipeline.hsvThreshold(frame, thresholds, output);
+            Core.absdiff(expected, output, diff);
+            pixels += frame.total();
+            mismatches += Core.countNonZero(diff);
+        }
+        System.out.println("lookup-" + bits + ": " + mismatches + " of " + pixels + " pixels differ from OpenCV");
+        if (bits == 8 && mismatches != 0) {
+            throw new IllegalStateException("8-bit lookup table does not match OpenCV");
+        }
+        expected.release();
+        diff.release();
+    }
+
+    @Benchmark
+    public Mat hsvThreshold() {
+        Mat frame = frames.get(frameIndex);
+        frameIndex = (frameIndex + 1) % frames.size();
+        pipeline.hsvThreshold(frame, thresholds, output);
+        return output;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public LookupThreshold buildTable() {
+        // What a change to the thresholds costs the lookup engine
+        int bits = engine.startsWith("lookup-") ? Integer.parseInt(engine.substring("lookup-".length())) : 8;
+        return new LookupThreshold(thresholds, bits);
+    }
+
+}
@@ -0,0 +1,187 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+
+/**
+ * Records the last seconds of every vision camera's frames and saves them when the Save entry is
+ * set, by the robot when detection fails or by hand from the dashboard, and when the program is
+ * shut down.
+ *
+ * <p>Saving happens on the black box's own daemon thread, so neither NetworkTables nor the vision
+ * threads wait for the files to be written. Each camera is saved to its own file in the directory,
+ * named after the time and the camera, which Replay reads like any other recording. After every
+ * save the oldest files are deleted so only the newest few are kept, since a save is about a frame
+ * size times the frames held for each camera. Nothing is saved at shutdown in a startup test. Once a
+ * second the time a frame takes to record and the memory held are published for each camera.
+ */
+public class BlackBox extends Thread {
+
+    public static final String EXTENSION = ".blackbox";
+
+    private static final long PUBLISH_PERIOD_MILLIS = 1000;
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final File dir;
+    private final int maxFiles;
+    private final NetworkTable table;
+    private final NetworkTableEntry saveEntry;
+    private final NetworkTableEntry lastSaveEntry;
+    private final List<FrameRecorder> recorders = new CopyOnWriteArrayList<>();
+
+    // Guarded by this
+    private boolean saveRequested;
+
+    /**
+     * @param dir the directory to save to
+     * @param maxFiles the number of saved files kept in the directory
+     * @param table the table to listen for the Save entry in and publish to
+     */
+    public BlackBox(File dir, int maxFiles, NetworkTable table) {
+        super("Black Box");
+        setDaemon(true);
+        this.dir = dir;
+        this.maxFiles = Math.max(maxFiles, 1);
+        this.table = table;
+
+        saveEntry = table.getEntry("Save");
+        lastSaveEntry = table.getEntry("Last Save");
+        saveEntry.setBoolean(false);
+        saveEntry.addListener(event -> {
+            if (event.value.isBoolean() && event.value.getBoolean()) {
+                requestSave();
+            }
+        }, EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+
+        // A startup test exits as soon as it's timed, with nothing worth keeping
+        if (!StartupReport.isTest()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(this::save, "Black Box Shutdown"));
+        }
+    }
+
+    /**
+     * Adds a recorder for a camera.
+     * @param name the camera's name
+     * @param seconds how long the recorder goes back
+     * @param fps the camera's fps
+     */
+    public FrameRecorder add(String name, double seconds, double fps) {
+        FrameRecorder recorder = new FrameRecorder(name, Math.max((int) Math.ceil(seconds * fps), 1));
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    /**
+     * Saves every recorder soon, on the black box's thread.
+     */
+    public synchronized void requestSave() {
+        saveRequested = true;
+        notifyAll();
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            boolean saving;
+            synchronized (this) {
+                try {
+                    if (!saveRequested) {
+                        wait(PUBLISH_PERIOD_MILLIS);
+                    }
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+                saving = saveRequested;
+                saveRequested = false;
+            }
+            if (saving) {
+                save();
+                saveEntry.setBoolean(false);
+            }
+            publish();
+        }
+    }
+
+    /**
+     * Saves every recorder now, on this thread.
+     */
+    public void save() {
+        // The shutdown hook can come while the thread is saving, so only one saves at a time
+        synchronized (recorders) {
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                System.err.println("Black box: could not create " + dir);
+                return;
+            }
+            String time = LocalDateTime.now().format(FILE_TIME);
+            for (FrameRecorder recorder : recorders) {
+                Path file = getFile(time, recorder.getName());
+                try {
+                    long start = System.nanoTime();
+                    int frames = recorder.save(file);
+                    if (frames == 0) {
+                        continue;
+                    }
+                    System.out.printf("Black box: saved %d frames of %s to %s in %.0f ms%n",
+                        frames, recorder.getName(), file, (System.nanoTime() - start) / 1e6);
+                    lastSaveEntry.setString(file.toString());
+                }
+                catch (IOException ex) {
+                    System.err.println("Black box: could not save " + file + ": " + ex);
+                }
+            }
+            deleteOldest();
+        }
+    }
+
+    /**
+     * Deletes the oldest saved files until only maxFiles are left.
+     */
+    private void deleteOldest() {
+        File[] files = dir.listFiles((parent, name) -> name.endsWith(EXTENSION));
+        if (files == null || files.length <= maxFiles) {
+            return;
+        }
+        // The names start with the time they were saved, so they sort from oldest to newest
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (int i = 0; i < files.length - maxFiles; i++) {
+            try {
+                Files.deleteIfExists(files[i].toPath());
+            }
+            catch (IOException ex) {
+                System.err.println("Black box: could not delete " + files[i] + ": " + ex);
+            }
+        }
+    }
+
+    /**
+     * Gets a file name for the camera that isn't taken yet.
+     */
+    private Path getFile(String time, String name) {
+        String base = time + "-" + name.replaceAll("[^A-Za-z0-9_-]", "_");
+        File file = new File(dir, base + EXTENSION);
+        for (int i = 2; file.exists(); i++) {
+            file = new File(dir, base + "-" + i + EXTENSION);
+        }
+        return file.toPath();
+    }
+
+    private void publish() {
+        for (FrameRecorder recorder : recorders) {
+            table.getEntry(recorder.getName() + " Record ms").setDouble(recorder.getCopyNanos() / 1e6);
+            table.getEntry(recorder.getName() + " Memory MB").setDouble(recorder.nativeBytes() / 1e6);
+        }
+    }
+
+}
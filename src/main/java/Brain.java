@@ -1,5 +1,13 @@
-
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableInstance;
 
 
 public class Brain {
@@ -16,6 +24,9 @@ public class Brain {
     public static double valueMinDefault = 232;
     public static double valueMaxDefault = 255;
 
+    // Vision - Result Publishing
+    public static double flushPeriodDefault = 0.005;
+
     // Vision - Front Line Detector
     public static double frontLineContoursDefault = 0;
     public static double frontLineAreaDefault = 0;
@@ -55,6 +66,11 @@ public class Brain {
     public static NetworkTableEntry frontLineAngleEntry;
     public static NetworkTableEntry frontLineXcenterEntry;
     public static NetworkTableEntry frontLineYcenterEntry;
+    public static NetworkTableEntry frontLineTimestampEntry;
+    public static NetworkTableEntry frontLineResultEntry;
+    public static NetworkTableEntry frontLineCandidatesEntry;
+    public static NetworkTableEntry frontLineTrackEntry;
+    public static NetworkTableEntry frontNativeMemoryEntry;
 
     // Vision - Left Line Detector
     public static NetworkTableEntry leftLineContoursEntry;
@@ -62,6 +78,11 @@ public class Brain {
     public static NetworkTableEntry leftLineAngleEntry;
     public static NetworkTableEntry leftLineXcenterEntry;
     public static NetworkTableEntry leftLineYcenterEntry;
+    public static NetworkTableEntry leftLineTimestampEntry;
+    public static NetworkTableEntry leftLineResultEntry;
+    public static NetworkTableEntry leftLineCandidatesEntry;
+    public static NetworkTableEntry leftLineTrackEntry;
+    public static NetworkTableEntry leftNativeMemoryEntry;
 
     // Vision - Right Line Detector
     public static NetworkTableEntry rightLineContoursEntry;
@@ -69,6 +90,59 @@ public class Brain {
     public static NetworkTableEntry rightLineAngleEntry;
     public static NetworkTableEntry rightLineXcenterEntry;
     public static NetworkTableEntry rightLineYcenterEntry;
+    public static NetworkTableEntry rightLineTimestampEntry;
+    public static NetworkTableEntry rightLineResultEntry;
+    public static NetworkTableEntry rightLineCandidatesEntry;
+    public static NetworkTableEntry rightLineTrackEntry;
+    public static NetworkTableEntry rightNativeMemoryEntry;
+
+    // Vision - Metrics, one subtable per camera
+    public static NetworkTable metricsTable;
+
+    //-----------//
+    // Snapshots //
+    //-----------//
+
+    // Vision - Line Pipeline
+    private static volatile HsvThresholds hsvThresholds = new HsvThresholds(hueMinDefault, hueMaxDefault,
+                                                                            saturationMinDefault, saturationMaxDefault,
+                                                                            valueMinDefault, valueMaxDefault);
+
+    // Vision - Result Publishing
+    public static long flushPeriodNanos = (long) (flushPeriodDefault * 1e9);
+    private static final AtomicLong lastFlushNanos = new AtomicLong(System.nanoTime());
+    private static final AtomicBoolean flushPending = new AtomicBoolean();
+    private static final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Result Flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    //-----------//
+    // Listeners //
+    //-----------//
+
+    // Vision - Line Pipeline
+    public static void listenForHsvThresholds(NetworkTable hsvTable) {
+        hsvTable.addEntryListener((table, key, entry, value, flags) -> updateHsvThresholds(),
+            EntryListenerFlags.kImmediate | EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+        updateHsvThresholds();
+    }
+
+    /**
+     * Rebuilds the HSV threshold snapshot if any of the entries changed.
+     */
+    public static synchronized void updateHsvThresholds() {
+        double hueMin = getHueMin();
+        double hueMax = getHueMax();
+        double saturationMin = getSaturationMin();
+        double saturationMax = getSaturationMax();
+        double valueMin = getValueMin();
+        double valueMax = getValueMax();
+        if (!hsvThresholds.matches(hueMin, hueMax, saturationMin, saturationMax, valueMin, valueMax)) {
+            hsvThresholds = new HsvThresholds(hueMin, hueMax, saturationMin, saturationMax, valueMin, valueMax);
+        }
+    }
 
     //---------//
     // Setters //
@@ -95,6 +169,26 @@ public class Brain {
         frontLineYcenterEntry.setDouble(value);
     }
 
+    public static void setFrontLineTimestamp(double value) {
+        frontLineTimestampEntry.setDouble(value);
+    }
+
+    public static void setFrontLineResult(double[] value) {
+        frontLineResultEntry.setDoubleArray(value);
+    }
+
+    public static void setFrontLineCandidates(double[] value) {
+        frontLineCandidatesEntry.setDoubleArray(value);
+    }
+
+    public static void setFrontLineTrack(double[] value) {
+        frontLineTrackEntry.setDoubleArray(value);
+    }
+
+    public static void setFrontNativeMemory(double value) {
+        frontNativeMemoryEntry.setDouble(value);
+    }
+
     // Vision - Left Line Detector
     public static void setLeftLineContours(double value) {
         leftLineContoursEntry.setDouble(value);
@@ -116,6 +210,26 @@ public class Brain {
         leftLineYcenterEntry.setDouble(value);
     }
 
+    public static void setLeftLineTimestamp(double value) {
+        leftLineTimestampEntry.setDouble(value);
+    }
+
+    public static void setLeftLineResult(double[] value) {
+        leftLineResultEntry.setDoubleArray(value);
+    }
+
+    public static void setLeftLineCandidates(double[] value) {
+        leftLineCandidatesEntry.setDoubleArray(value);
+    }
+
+    public static void setLeftLineTrack(double[] value) {
+        leftLineTrackEntry.setDoubleArray(value);
+    }
+
+    public static void setLeftNativeMemory(double value) {
+        leftNativeMemoryEntry.setDouble(value);
+    }
+
     // Vision - Right Line Detector
     public static void setRightLineContours(double value) {
         rightLineContoursEntry.setDouble(value);
@@ -137,11 +251,61 @@ public class Brain {
         rightLineYcenterEntry.setDouble(value);
     }
 
+    public static void setRightLineTimestamp(double value) {
+        rightLineTimestampEntry.setDouble(value);
+    }
+
+    public static void setRightLineResult(double[] value) {
+        rightLineResultEntry.setDoubleArray(value);
+    }
+
+    public static void setRightLineCandidates(double[] value) {
+        rightLineCandidatesEntry.setDoubleArray(value);
+    }
+
+    public static void setRightLineTrack(double[] value) {
+        rightLineTrackEntry.setDoubleArray(value);
+    }
+
+    public static void setRightNativeMemory(double value) {
+        rightNativeMemoryEntry.setDouble(value);
+    }
+
+    // Vision - Result Publishing
+
+    /**
+     * Sends the latest results to the robot now instead of on the next NetworkTables update.
+     * Flushes are rate limited across all cameras to one per flushPeriodNanos. A result published
+     * too soon after another camera's flush is sent by one more flush at the end of the period.
+     */
+    public static void flushResults() {
+        long now = System.nanoTime();
+        long last = lastFlushNanos.get();
+        if (now - last >= flushPeriodNanos && lastFlushNanos.compareAndSet(last, now)) {
+            NetworkTableInstance.getDefault().flush();
+        }
+        else if (flushPending.compareAndSet(false, true)) {
+            long delay = Math.max(last + flushPeriodNanos - now, 0);
+            flusher.schedule(Brain::trailingFlush, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void trailingFlush() {
+        // Cleared first, so a result published during the flush schedules another
+        flushPending.set(false);
+        lastFlushNanos.set(System.nanoTime());
+        NetworkTableInstance.getDefault().flush();
+    }
+
     //---------//
     // Getters //
     //---------//
 
     // Vision - LinePipeline
+    public static HsvThresholds getHsvThresholds() {
+        return hsvThresholds;
+    }
+
     public static double getHueMin() {
         return hueMinEntry.getDouble(hueMinDefault);
     }
@@ -0,0 +1,45 @@
+import org.opencv.core.Mat;
+
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoSource;
+
+
+/**
+ * Frames from a live camera, as cscore delivers them. The frame times are cscore's.
+ */
+public class CameraFrameSource implements FrameSource {
+
+    private final VideoSource camera;
+    private final CvSink cvSink;
+
+    public CameraFrameSource(VideoSource camera) {
+        this.camera = camera;
+        this.cvSink = new CvSink("opencv_" + camera.getName());
+        this.cvSink.setSource(camera);
+    }
+
+    public VideoSource getCamera() {
+        return camera;
+    }
+
+    @Override
+    public String getName() {
+        return camera.getName();
+    }
+
+    @Override
+    public long readFrame(Mat frame) {
+        return cvSink.grabFrame(frame);
+    }
+
+    @Override
+    public String getError() {
+        return cvSink.getError();
+    }
+
+    @Override
+    public void close() {
+        cvSink.close();
+    }
+
+}
@@ -0,0 +1,131 @@
+import edu.wpi.first.networktables.EntryListenerFlags;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTablesJNI;
+
+
+/**
+ * Estimates the offset from the Pi's clock to the robot's clock, so the robot can convert the
+ * frame timestamps published by Vision into its own time.
+ *
+ * <p>Once a second the Pi writes {@code [sequence, piTime]} to "Ping". The robot code answers by
+ * writing {@code [sequence, piTime, robotTime]} to "Pong" as soon as it sees a new ping, with
+ * robotTime being its FPGA timestamp in microseconds. Assuming the delay is the same in both
+ * directions, {@code offset = robotTime - (ping sent + pong received) / 2}. The estimate from the
+ * round trip with the least delay in the recent window is published as "Offset", so
+ * {@code robotTime = piTime + Offset}. All times are in microseconds.
+ */
+public class ClockSync {
+
+    private static final long PING_PERIOD_MILLIS = 1000;
+    // Pings remembered to find the best round trip
+    private static final int WINDOW = 16;
+
+    private final NetworkTableEntry pingEntry;
+    private final NetworkTableEntry pongEntry;
+    private final NetworkTableEntry offsetEntry;
+    private final NetworkTableEntry roundTripEntry;
+    private final NetworkTableEntry syncedEntry;
+
+    private final long[] roundTrips = new long[WINDOW];
+    private final long[] offsets = new long[WINDOW];
+    private int samples;
+    private int nextSample;
+    private long sequence;
+
+    private volatile long offset;
+    private volatile boolean synced;
+
+    public ClockSync(NetworkTable table) {
+        pingEntry = table.getEntry("Ping");
+        pongEntry = table.getEntry("Pong");
+        offsetEntry = table.getEntry("Offset");
+        roundTripEntry = table.getEntry("Round Trip");
+        syncedEntry = table.getEntry("Synced");
+        syncedEntry.setBoolean(false);
+    }
+
+    /**
+     * Starts pinging the robot and listening for its answers.
+     */
+    public void start() {
+        pongEntry.addListener(event -> {
+            if (event.value.isDoubleArray()) {
+                handlePong(event.value.getDoubleArray(), NetworkTablesJNI.now());
+            }
+        }, EntryListenerFlags.kNew | EntryListenerFlags.kUpdate);
+
+        Thread pinger = new Thread(() -> {
+            for (;;) {
+                synchronized (this) {
+                    sequence++;
+                    pingEntry.setDoubleArray(new double[] {sequence, NetworkTablesJNI.now()});
+                }
+                pingEntry.getInstance().flush();
+                try {
+                    Thread.sleep(PING_PERIOD_MILLIS);
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }, "ClockSync");
+        pinger.setDaemon(true);
+        pinger.start();
+    }
+
+    /**
+     * Gets the estimated robot time minus Pi time, in microseconds.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Checks if the robot has answered a ping yet.
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * Converts a Pi timestamp into robot time, if synced.
+     */
+    public long toRobotTime(long piTime) {
+        return piTime + offset;
+    }
+
+    private synchronized void handlePong(double[] pong, long received) {
+        // Only answers to the latest ping are trusted, older ones sat in a queue
+        if (pong.length < 3 || (long) pong[0] != sequence) {
+            return;
+        }
+        long sent = (long) pong[1];
+        long robotTime = (long) pong[2];
+        long roundTrip = received - sent;
+        if (roundTrip < 0) {
+            return;
+        }
+
+        roundTrips[nextSample] = roundTrip;
+        offsets[nextSample] = robotTime - (sent + received) / 2;
+        nextSample = (nextSample + 1) % WINDOW;
+        if (samples < WINDOW) {
+            samples++;
+        }
+
+        int best = 0;
+        for (int i = 1; i < samples; i++) {
+            if (roundTrips[i] < roundTrips[best]) {
+                best = i;
+            }
+        }
+        offset = offsets[best];
+        synced = true;
+
+        offsetEntry.setDouble(offset);
+        roundTripEntry.setDouble(roundTrips[best]);
+        syncedEntry.setBoolean(true);
+    }
+
+}
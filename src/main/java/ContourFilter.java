@@ -0,0 +1,221 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opencv.core.*;
+
+
+/**
+ * Filters out contours that do not meet certain criteria.
+ *
+ * <p>The criteria are checked as a chain, cheapest first, so most contours are rejected before
+ * anything expensive is computed. Criteria that can't reject anything (like a solidity range of
+ * 0 to 100) are left out of the chain. Each contour is read into reusable primitive buffers with
+ * one bulk transfer, and nothing is allocated per contour.
+ */
+public class ContourFilter {
+
+    /**
+     * The checks in the chain, in order of cost.
+     */
+    public enum Check {
+        // Only needs the number of rows in the contour
+        VERTICES,
+        // Bounding box width, height and ratio; needs the points
+        BOUNDING_BOX,
+        AREA,
+        PERIMETER,
+        // Needs the convex hull
+        SOLIDITY
+    }
+
+    // Settings
+    private double minArea = 0;
+    private double minPerimeter = 0;
+    private double minWidth = 0;
+    private double maxWidth = Double.POSITIVE_INFINITY;
+    private double minHeight = 0;
+    private double maxHeight = Double.POSITIVE_INFINITY;
+    private double minSolidity = 0;
+    private double maxSolidity = 100;
+    private double minVertexCount = 0;
+    private double maxVertexCount = Double.POSITIVE_INFINITY;
+    private double minRatio = 0;
+    private double maxRatio = Double.POSITIVE_INFINITY;
+
+    private Check[] chain = new Check[0];
+
+    // Reusable buffers
+    private final ContourPoints points = new ContourPoints();
+    private final int[] box = new int[4];
+
+    // Values of the contour being checked
+    private int vertexCount;
+    private boolean pointsRead;
+    private double area;
+    private boolean areaFound;
+
+    public void setMinArea(double minArea) {
+        this.minArea = minArea;
+        buildChain();
+    }
+
+    public double getMinArea() {
+        return minArea;
+    }
+
+    public void setMinPerimeter(double minPerimeter) {
+        this.minPerimeter = minPerimeter;
+        buildChain();
+    }
+
+    public void setWidth(double minWidth, double maxWidth) {
+        this.minWidth = minWidth;
+        this.maxWidth = maxWidth;
+        buildChain();
+    }
+
+    public double getMinWidth() {
+        return minWidth;
+    }
+
+    public void setHeight(double minHeight, double maxHeight) {
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+        buildChain();
+    }
+
+    public void setSolidity(double minSolidity, double maxSolidity) {
+        this.minSolidity = minSolidity;
+        this.maxSolidity = maxSolidity;
+        buildChain();
+    }
+
+    public void setVertexCount(double minVertexCount, double maxVertexCount) {
+        this.minVertexCount = minVertexCount;
+        this.maxVertexCount = maxVertexCount;
+        buildChain();
+    }
+
+    public void setRatio(double minRatio, double maxRatio) {
+        this.minRatio = minRatio;
+        this.maxRatio = maxRatio;
+        buildChain();
+    }
+
+    /**
+     * Gets the checks that are run, in the order they are run.
+     */
+    public Check[] getChain() {
+        return chain.clone();
+    }
+
+    /**
+     * Rebuilds the chain from the settings, leaving out checks that can't reject anything.
+     */
+    private void buildChain() {
+        List<Check> checks = new ArrayList<>();
+        for (Check check : Check.values()) {
+            boolean needed;
+            switch (check) {
+                case VERTICES:
+                    needed = minVertexCount > 1 || maxVertexCount != Double.POSITIVE_INFINITY;
+                    break;
+                case BOUNDING_BOX:
+                    needed = minWidth > 1 || maxWidth != Double.POSITIVE_INFINITY
+                        || minHeight > 1 || maxHeight != Double.POSITIVE_INFINITY
+                        || minRatio > 0 || maxRatio != Double.POSITIVE_INFINITY;
+                    break;
+                case AREA:
+                    needed = minArea > 0;
+                    break;
+                case PERIMETER:
+                    needed = minPerimeter > 0;
+                    break;
+                case SOLIDITY:
+                    // A contour's area can't be more than its hull's area
+                    needed = minSolidity > 0 || maxSolidity < 100;
+                    break;
+                default:
+                    needed = true;
+                    break;
+            }
+            if (needed) {
+                checks.add(check);
+            }
+        }
+        chain = checks.toArray(new Check[0]);
+    }
+
+    /**
+     * Filters the contours.
+     * @param inputContours is the input list of contours
+     * @param output is the the output list of contours
+     */
+    public void filter(List<MatOfPoint> inputContours, List<MatOfPoint> output) {
+        output.clear();
+        for (int i = 0; i < inputContours.size(); i++) {
+            MatOfPoint contour = inputContours.get(i);
+            if (accept(contour)) {
+                output.add(contour);
+            }
+        }
+    }
+
+    /**
+     * Runs the contour through the chain.
+     * @return true if the contour passes every check
+     */
+    public boolean accept(MatOfPoint contour) {
+        vertexCount = contour.rows();
+        pointsRead = false;
+        areaFound = false;
+        for (Check check : chain) {
+            switch (check) {
+                case VERTICES:
+                    if (vertexCount < minVertexCount || vertexCount > maxVertexCount) return false;
+                    break;
+                case BOUNDING_BOX:
+                    readPoints(contour);
+                    if (vertexCount == 0) return false;
+                    points.boundingBox(box);
+                    if (box[2] < minWidth || box[2] > maxWidth) return false;
+                    if (box[3] < minHeight || box[3] > maxHeight) return false;
+                    final double ratio = box[2] / (double) box[3];
+                    if (ratio < minRatio || ratio > maxRatio) return false;
+                    break;
+                case AREA:
+                    if (findArea(contour) < minArea) return false;
+                    break;
+                case PERIMETER:
+                    readPoints(contour);
+                    if (points.perimeter() < minPerimeter) return false;
+                    break;
+                case SOLIDITY:
+                    findArea(contour);
+                    int hullCount = points.convexHull();
+                    final double solid = 100 * area / ContourGeometry.area(points.getHull(), hullCount);
+                    if (solid < minSolidity || solid > maxSolidity) return false;
+                    break;
+            }
+        }
+        return true;
+    }
+
+    private void readPoints(MatOfPoint contour) {
+        if (pointsRead) {
+            return;
+        }
+        points.read(contour);
+        pointsRead = true;
+    }
+
+    private double findArea(MatOfPoint contour) {
+        if (!areaFound) {
+            readPoints(contour);
+            area = points.area();
+            areaFound = true;
+        }
+        return area;
+    }
+
+}
@@ -0,0 +1,303 @@
+import java.util.Arrays;
+
+
+/**
+ * Contour measurements on primitive point buffers.
+ *
+ * <p>Points are stored as x, y pairs in an int array, the same layout as a MatOfPoint,
+ * so a contour can be read with a single bulk Mat.get call.
+ */
+public final class ContourGeometry {
+
+    private ContourGeometry() {
+    }
+
+    /**
+     * Gets the area enclosed by the points, the same as Imgproc.contourArea.
+     *
+     * @param xy the x, y pairs
+     * @param count the number of points
+     */
+    public static double area(int[] xy, int count) {
+        if (count < 3) {
+            return 0;
+        }
+        long twiceArea = 0;
+        int prevX = xy[2 * count - 2];
+        int prevY = xy[2 * count - 1];
+        for (int i = 0; i < count; i++) {
+            int x = xy[2 * i];
+            int y = xy[2 * i + 1];
+            twiceArea += (long) prevX * y - (long) x * prevY;
+            prevX = x;
+            prevY = y;
+        }
+        return Math.abs(twiceArea) / 2.0;
+    }
+
+    /**
+     * Gets the length of the closed curve through the points, the same as Imgproc.arcLength(curve, true).
+     *
+     * @param xy the x, y pairs
+     * @param count the number of points
+     */
+    public static double perimeter(int[] xy, int count) {
+        if (count < 2) {
+            return 0;
+        }
+        double length = 0;
+        int prevX = xy[2 * count - 2];
+        int prevY = xy[2 * count - 1];
+        for (int i = 0; i < count; i++) {
+            int x = xy[2 * i];
+            int y = xy[2 * i + 1];
+            double dx = x - prevX;
+            double dy = y - prevY;
+            length += Math.sqrt(dx * dx + dy * dy);
+            prevX = x;
+            prevY = y;
+        }
+        return length;
+    }
+
+    /**
+     * Gets the bounding box of the points, the same as Imgproc.boundingRect.
+     *
+     * @param xy the x, y pairs
+     * @param count the number of points (at least one)
+     * @param box where the x, y, width and height are stored
+     */
+    public static void boundingBox(int[] xy, int count, int[] box) {
+        int minX = xy[0];
+        int maxX = minX;
+        int minY = xy[1];
+        int maxY = minY;
+        for (int i = 1; i < count; i++) {
+            int x = xy[2 * i];
+            int y = xy[2 * i + 1];
+            if (x < minX) minX = x;
+            else if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            else if (y > maxY) maxY = y;
+        }
+        box[0] = minX;
+        box[1] = minY;
+        box[2] = maxX - minX + 1;
+        box[3] = maxY - minY + 1;
+    }
+
+    /**
+     * Gets the spatial moments of the area enclosed by the points, the same as Imgproc.moments on
+     * the contour.
+     *
+     * @param xy the x, y pairs
+     * @param count the number of points
+     * @param moments where m00, m10, m01, m20, m11 and m02 are stored
+     */
+    public static void moments(int[] xy, int count, double[] moments) {
+        double m00 = 0;
+        double m10 = 0;
+        double m01 = 0;
+        double m20 = 0;
+        double m11 = 0;
+        double m02 = 0;
+        if (count >= 3) {
+            double prevX = xy[2 * count - 2];
+            double prevY = xy[2 * count - 1];
+            for (int i = 0; i < count; i++) {
+                double x = xy[2 * i];
+                double y = xy[2 * i + 1];
+                double a = prevX * y - x * prevY;
+                m00 += a;
+                m10 += a * (prevX + x);
+                m01 += a * (prevY + y);
+                m20 += a * (prevX * prevX + prevX * x + x * x);
+                m11 += a * (prevX * (2 * prevY + y) + x * (prevY + 2 * y));
+                m02 += a * (prevY * prevY + prevY * y + y * y);
+                prevX = x;
+                prevY = y;
+            }
+        }
+        // Clockwise points give negative sums
+        double sign = m00 < 0 ? -1 : 1;
+        moments[0] = sign * m00 / 2;
+        moments[1] = sign * m10 / 6;
+        moments[2] = sign * m01 / 6;
+        moments[3] = sign * m20 / 12;
+        moments[4] = sign * m11 / 24;
+        moments[5] = sign * m02 / 12;
+    }
+
+    /**
+     * Finds the convex hull of the points using Andrew's monotone chain.
+     *
+     * @param xy the x, y pairs
+     * @param count the number of points
+     * @param sorted a scratch buffer of at least count longs
+     * @param hull where the hull's x, y pairs are stored; needs room for 2 * count points
+     * @return the number of points in the hull
+     */
+    public static int convexHull(int[] xy, int count, long[] sorted, int[] hull) {
+        // Sort by x then y, packed so the sort works on primitives
+        for (int i = 0; i < count; i++) {
+            sorted[i] = ((long) xy[2 * i] << 32) | (xy[2 * i + 1] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted, 0, count);
+        if (count < 3) {
+            for (int i = 0; i < count; i++) {
+                hull[2 * i] = (int) (sorted[i] >> 32);
+                hull[2 * i + 1] = (int) sorted[i];
+            }
+            return count;
+        }
+
+        int size = 0;
+        // Lower hull
+        for (int i = 0; i < count; i++) {
+            size = addHullPoint(hull, size, 2, sorted[i]);
+        }
+        // Upper hull
+        int lowerSize = size + 1;
+        for (int i = count - 2; i >= 0; i--) {
+            size = addHullPoint(hull, size, lowerSize, sorted[i]);
+        }
+        // The last point is the same as the first
+        return size - 1;
+    }
+
+    private static int addHullPoint(int[] hull, int size, int minSize, long point) {
+        int x = (int) (point >> 32);
+        int y = (int) point;
+        while (size >= minSize) {
+            int ax = hull[2 * size - 4];
+            int ay = hull[2 * size - 3];
+            int bx = hull[2 * size - 2];
+            int by = hull[2 * size - 1];
+            long cross = (long) (bx - ax) * (y - ay) - (long) (by - ay) * (x - ax);
+            if (cross > 0) {
+                break;
+            }
+            size--;
+        }
+        hull[2 * size] = x;
+        hull[2 * size + 1] = y;
+        return size + 1;
+    }
+
+    /**
+     * Finds the minimum area rectangle around a convex hull using rotating calipers, the same
+     * rectangle as Imgproc.minAreaRect with the same conventions: the angle is in [-90, 0) degrees
+     * and the width is the side at that angle.
+     *
+     * @param hull the hull's x, y pairs, counterclockwise as convexHull gives them
+     * @param count the number of points in the hull
+     * @param rect where the center x, center y, width, height and angle are stored
+     */
+    public static void minAreaRect(int[] hull, int count, double[] rect) {
+        if (count == 0) {
+            rect[0] = 0;
+            rect[1] = 0;
+            rect[2] = 0;
+            rect[3] = 0;
+            rect[4] = 0;
+            return;
+        }
+        if (count == 1) {
+            setRect(rect, hull[0], hull[1], 1, 0, 0, 0, 0, 0);
+            return;
+        }
+        if (count == 2) {
+            long ex = hull[2] - hull[0];
+            long ey = hull[3] - hull[1];
+            setRect(rect, hull[0], hull[1], ex, ey, 0, ex * ex + ey * ey, 0, 0);
+            return;
+        }
+
+        // For every edge the calipers are the points furthest along it (right), furthest from it
+        // (top) and furthest back along it (left). They only ever move forward as the edge turns.
+        int right = 1;
+        int top = 1;
+        int left = 1;
+        double bestArea = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            int next = (i + 1) % count;
+            int ox = hull[2 * i];
+            int oy = hull[2 * i + 1];
+            long ex = hull[2 * next] - ox;
+            long ey = hull[2 * next + 1] - oy;
+
+            while (along(hull, (right + 1) % count, ox, oy, ex, ey) > along(hull, right, ox, oy, ex, ey)) {
+                right = (right + 1) % count;
+            }
+            if (i == 0) {
+                top = right;
+            }
+            while (across(hull, (top + 1) % count, ox, oy, ex, ey) > across(hull, top, ox, oy, ex, ey)) {
+                top = (top + 1) % count;
+            }
+            if (i == 0) {
+                left = top;
+            }
+            while (along(hull, (left + 1) % count, ox, oy, ex, ey) < along(hull, left, ox, oy, ex, ey)) {
+                left = (left + 1) % count;
+            }
+
+            long minAlong = along(hull, left, ox, oy, ex, ey);
+            long maxAlong = along(hull, right, ox, oy, ex, ey);
+            long maxAcross = across(hull, top, ox, oy, ex, ey);
+            double lengthSquared = ex * ex + ey * ey;
+            double area = (maxAlong - minAlong) * (double) maxAcross / lengthSquared;
+            if (area < bestArea) {
+                bestArea = area;
+                setRect(rect, ox, oy, ex, ey, minAlong, maxAlong, maxAcross, lengthSquared);
+            }
+        }
+    }
+
+    // The projection of a hull point onto an edge, times the edge's length
+    private static long along(int[] hull, int index, int ox, int oy, long ex, long ey) {
+        return (hull[2 * index] - ox) * ex + (hull[2 * index + 1] - oy) * ey;
+    }
+
+    // The distance of a hull point from an edge's line, times the edge's length
+    private static long across(int[] hull, int index, int ox, int oy, long ex, long ey) {
+        return (hull[2 * index + 1] - oy) * ex - (hull[2 * index] - ox) * ey;
+    }
+
+    /**
+     * Stores the rectangle spanning minAlong to maxAlong along the edge and 0 to maxAcross from
+     * it, both times the edge's length, in Imgproc.minAreaRect's conventions.
+     */
+    private static void setRect(double[] rect, int ox, int oy, long ex, long ey,
+                                long minAlong, long maxAlong, long maxAcross, double lengthSquared) {
+        double length = Math.sqrt(lengthSquared);
+        double ux = length > 0 ? ex / length : 1;
+        double uy = length > 0 ? ey / length : 0;
+        double alongSize = length > 0 ? (maxAlong - minAlong) / length : 0;
+        double acrossSize = length > 0 ? maxAcross / length : 0;
+        double alongMid = length > 0 ? (minAlong + maxAlong) / (2 * length) : 0;
+        double acrossMid = acrossSize / 2;
+
+        // The across direction is (-uy, ux)
+        rect[0] = ox + ux * alongMid - uy * acrossMid;
+        rect[1] = oy + uy * alongMid + ux * acrossMid;
+
+        // Turn the edge's angle into [-90, 0), swapping the sides when it turns by a quarter
+        double angle = Math.toDegrees(Math.atan2(uy, ux));
+        angle = Math.IEEEremainder(angle, 180);
+        if (angle >= 90) {
+            angle -= 180;
+        }
+        if (angle >= 0) {
+            rect[2] = acrossSize;
+            rect[3] = alongSize;
+            rect[4] = angle - 90;
+        }
+        else {
+            rect[2] = alongSize;
+            rect[3] = acrossSize;
+            rect[4] = angle;
+        }
+    }
+
+}
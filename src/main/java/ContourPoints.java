@@ -0,0 +1,139 @@
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+
+
+/**
+ * A contour's points read into reusable primitive buffers, with the ContourGeometry measurements
+ * on them.
+ *
+ * <p>Reading a contour is one bulk Mat.get call, with no Point objects or float copies of the
+ * contour. The convex hull is found at most once per contour read. One instance is meant to be
+ * reused for every contour a thread measures.
+ */
+public class ContourPoints {
+
+    private int[] xy = new int[256];
+    private int count;
+    private long[] sorted = new long[128];
+    private int[] hull = new int[512];
+    private int hullCount = -1;
+    private final double[] rect = new double[5];
+
+    /**
+     * Reads the points of a contour, replacing the last one.
+     * @return the number of points
+     */
+    public int read(MatOfPoint contour) {
+        count = contour.rows();
+        if (xy.length < 2 * count) {
+            xy = new int[4 * count];
+        }
+        if (count > 0) {
+            contour.get(0, 0, xy);
+        }
+        hullCount = -1;
+        return count;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the x, y pairs of the points. The array may be longer than the contour.
+     */
+    public int[] getPoints() {
+        return xy;
+    }
+
+    /**
+     * Gets the area, the same as Imgproc.contourArea.
+     */
+    public double area() {
+        return ContourGeometry.area(xy, count);
+    }
+
+    /**
+     * Gets the perimeter, the same as Imgproc.arcLength(contour, true).
+     */
+    public double perimeter() {
+        return ContourGeometry.perimeter(xy, count);
+    }
+
+    /**
+     * Gets the bounding box, the same as Imgproc.boundingRect.
+     * @param box where the x, y, width and height are stored
+     */
+    public void boundingBox(int[] box) {
+        if (count == 0) {
+            box[0] = 0;
+            box[1] = 0;
+            box[2] = 0;
+            box[3] = 0;
+            return;
+        }
+        ContourGeometry.boundingBox(xy, count, box);
+    }
+
+    /**
+     * Finds the convex hull, counterclockwise.
+     * @return the number of points in the hull
+     */
+    public int convexHull() {
+        if (hullCount < 0) {
+            if (sorted.length < count) {
+                sorted = new long[2 * count];
+            }
+            if (hull.length < 4 * count) {
+                hull = new int[8 * count];
+            }
+            hullCount = ContourGeometry.convexHull(xy, count, sorted, hull);
+        }
+        return hullCount;
+    }
+
+    /**
+     * Gets the x, y pairs of the convex hull found by convexHull().
+     */
+    public int[] getHull() {
+        return hull;
+    }
+
+    /**
+     * Gets the solidity, the area as a percentage of the convex hull's area.
+     */
+    public double solidity() {
+        int hullCount = convexHull();
+        double hullArea = ContourGeometry.area(hull, hullCount);
+        return hullArea > 0 ? 100 * area() / hullArea : 0;
+    }
+
+    /**
+     * Finds the minimum area rectangle, the same as Imgproc.minAreaRect.
+     * @param rect where the center x, center y, width, height and angle are stored
+     */
+    public void minAreaRect(double[] rect) {
+        int hullCount = convexHull();
+        ContourGeometry.minAreaRect(hull, hullCount, rect);
+    }
+
+    /**
+     * Finds the minimum area rectangle into a RotatedRect, the same as Imgproc.minAreaRect.
+     * @param out the RotatedRect to store it in, or null to create one
+     */
+    public RotatedRect minAreaRect(RotatedRect out) {
+        minAreaRect(rect);
+        if (out == null) {
+            return new RotatedRect(new Point(rect[0], rect[1]), new Size(rect[2], rect[3]), rect[4]);
+        }
+        out.center.x = rect[0];
+        out.center.y = rect[1];
+        out.size.width = rect[2];
+        out.size.height = rect[3];
+        out.angle = rect[4];
+        return out;
+    }
+
+}
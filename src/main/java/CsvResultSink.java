@@ -0,0 +1,86 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+
+
+/**
+ * Writes the results of replayed frames to a CSV file, one row per frame with the frame's number
+ * and label, so two runs can be compared with a diff or a spreadsheet.
+ *
+ * <p>Everything in a row except the processing time only depends on the frames and the settings.
+ */
+public class CsvResultSink implements ResultSink {
+
+    private static final String HEADER = "frame,label,sequence,contours,found,area,angle,center x,center y,"
+        + "candidates,track valid,track x,track y,track angle,track confidence,process ms";
+
+    private final ReplayFrameSource source;
+    private final BufferedWriter writer;
+
+    // Guarded by this
+    private long rows;
+    private IOException error;
+
+    /**
+     * @param file the file to write, replacing it
+     * @param source the frames the results are from, for their numbers and labels
+     */
+    public CsvResultSink(File file, ReplayFrameSource source) throws IOException {
+        this.source = source;
+        this.writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8);
+        writer.write(HEADER);
+        writer.newLine();
+    }
+
+    @Override
+    public synchronized void resultPublished(long frameTime, LineResult result, LineCandidates candidates,
+                                             LineTracker tracker, long processNanos) {
+        if (error != null) {
+            return;
+        }
+        int index = source.getIndex(frameTime);
+        String row = String.format(Locale.ROOT, "%d,%s,%d,%d,%b,%.1f,%.2f,%.1f,%.1f,%d,%b,%.2f,%.2f,%.2f,%.3f,%.3f",
+            index, quote(source.getLabel(index)), result.sequence, result.contours, result.found,
+            result.area, result.angle, result.centerX, result.centerY, candidates.getCount(),
+            tracker.isValid(), tracker.getCenterX(), tracker.getCenterY(), tracker.getAngle(),
+            tracker.getConfidence(), processNanos / 1e6);
+        try {
+            writer.write(row);
+            writer.newLine();
+            rows++;
+        }
+        catch (IOException ex) {
+            error = ex;
+            System.err.println("could not write results: " + ex);
+        }
+    }
+
+    private static String quote(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Gets the number of rows written.
+     */
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    /**
+     * Finishes the file.
+     * @throws IOException if any row couldn't be written
+     */
+    public synchronized void close() throws IOException {
+        writer.close();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+}
@@ -1,41 +1,72 @@
-
-import com.pi4j.io.gpio.GpioController;
-import com.pi4j.io.gpio.GpioFactory;
-import com.pi4j.io.gpio.GpioPinDigitalInput;
-import com.pi4j.io.gpio.GpioPinDigitalOutput;
 import com.pi4j.io.gpio.Pin;
 
 
 public class DistanceMonitor {
 
+    /**
+     * The ways the echo pulse can be timed.
+     */
+    public enum Mode {
+        // Read the echo pin in a loop, keeping a core busy for the whole measurement
+        POLL,
+        // Wait for the echo pin's edges to be reported, sleeping in between. Not yet checked on the
+        // robot's sensors, so not the default
+        EDGE
+    }
+
     private final static float SOUND_SPEED = 340.29f;  // speed of sound in m/s
-    
+
     private final static int TRIG_DURATION_IN_MICROS = 10; // trigger duration of 10 micro s
     private final static int WAIT_DURATION_IN_MILLIS = 60; // wait 60 milli s
 
-    private final static int TIMEOUT = 2100;
-    
-    private final static GpioController gpio = GpioFactory.getInstance();
-    
-    private final GpioPinDigitalInput echoPin;
-    private final GpioPinDigitalOutput trigPin;
-            
+    // How long the echo may take to start and to end, in real time
+    private final static long SIGNAL_START_TIMEOUT_IN_MICROS = 10000;
+    private final static long SIGNAL_END_TIMEOUT_IN_MICROS = 30000;
+
+    // Time after the trigger for the sensor to send its burst and for stray reflections to fade
+    private final static long ECHO_OVERHEAD_IN_MICROS = 3000;
+
+    private final SensorPins pins;
+    private final Mode mode;
+
+    // Echo edges in EDGE mode, guarded by this
+    private boolean armed;
+    private long riseTime;
+    private long fallTime;
+
     public DistanceMonitor(Pin echoPin, Pin trigPin) {
-        this.echoPin = gpio.provisionDigitalInputPin(echoPin);
-        this.trigPin = gpio.provisionDigitalOutputPin(trigPin);
-        this.trigPin.low();
+        this(new Pi4jSensorPins(echoPin, trigPin), Mode.POLL);
+    }
+
+    public DistanceMonitor(SensorPins pins, Mode mode) {
+        this.pins = pins;
+        this.mode = mode;
+        this.pins.setTrigger(false);
+        if (mode == Mode.EDGE) {
+            this.pins.setEchoListener(this::echoEdge);
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
     }
-    
+
     /*
         * This method returns the distance measured by the sensor in cm
-        * 
+        *
         * @throws TimeoutException if a timeout occurs
         */
     public float measureDistance() throws TimeoutException {
-        this.triggerSensor();
-        this.waitForSignal();
-        long duration = this.measureSignal();
-        
+        long duration;
+        if (mode == Mode.EDGE) {
+            duration = this.measureEdges();
+        }
+        else {
+            this.triggerSensor();
+            this.waitForSignal();
+            duration = this.measureSignal();
+        }
+
         return duration * SOUND_SPEED / (2 * 10000);
     }
 
@@ -43,50 +74,122 @@ public class DistanceMonitor {
      * Put a high on the trig pin for TRIG_DURATION_IN_MICROS
      */
     private void triggerSensor() {
-        try {
-            this.trigPin.high();
-            Thread.sleep(0, TRIG_DURATION_IN_MICROS * 1000);
-            this.trigPin.low();
-        }
-        catch (InterruptedException ex) {
-            System.err.println( "Interrupt during trigger" );
+        // Thread.sleep can't sleep for as little as 10 micro s, so spin instead
+        long end = System.nanoTime() + TRIG_DURATION_IN_MICROS * 1000;
+        this.pins.setTrigger(true);
+        while (System.nanoTime() - end < 0) {
+            // spin
         }
+        this.pins.setTrigger(false);
     }
-    
+
     /**
      * Wait for a high on the echo pin
-     * 
+     *
      * @throws DistanceMonitor.TimeoutException if no high appears in time
      */
     private void waitForSignal() throws TimeoutException {
-        int countdown = TIMEOUT;
-        
-        while (this.echoPin.isLow() && countdown > 0) {
-            countdown--;
-        }
-        
-        if (countdown <= 0) {
-            throw new TimeoutException( "Timeout waiting for signal start" );
+        long deadline = System.nanoTime() + SIGNAL_START_TIMEOUT_IN_MICROS * 1000;
+
+        while (!this.pins.isEchoHigh()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException( "Timeout waiting for signal start" );
+            }
         }
     }
-    
+
     /**
      * @return the duration of the signal in micro seconds
      * @throws DistanceMonitor.TimeoutException if no low appears in time
      */
     private long measureSignal() throws TimeoutException {
-        int countdown = TIMEOUT;
         long start = System.nanoTime();
-        while (this.echoPin.isHigh() && countdown > 0) {
-            countdown--;
+        long deadline = start + SIGNAL_END_TIMEOUT_IN_MICROS * 1000;
+        while (this.pins.isEchoHigh()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new TimeoutException("Timeout waiting for signal end");
+            }
         }
         long end = System.nanoTime();
-        
-        if (countdown <= 0) {
-            throw new TimeoutException("Timeout waiting for signal end");
-        }
-        
+
         return (long)Math.ceil((end - start) / 1000.0);  // Return micro seconds
     }
 
+    /**
+     * Triggers the sensor and waits for the echo's edges to be reported.
+     * @return the duration of the signal in micro seconds
+     * @throws DistanceMonitor.TimeoutException if an edge doesn't appear in time
+     */
+    private synchronized long measureEdges() throws TimeoutException {
+        riseTime = 0;
+        fallTime = 0;
+        armed = true;
+        try {
+            this.triggerSensor();
+
+            long triggered = System.nanoTime();
+            long startDeadline = triggered + SIGNAL_START_TIMEOUT_IN_MICROS * 1000;
+            long endDeadline = startDeadline + SIGNAL_END_TIMEOUT_IN_MICROS * 1000;
+            while (fallTime == 0) {
+                long deadline = riseTime == 0 ? startDeadline : endDeadline;
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    if (riseTime == 0) {
+                        throw new TimeoutException("Timeout waiting for signal start");
+                    }
+                    throw new TimeoutException("Timeout waiting for signal end");
+                }
+                wait(remaining / 1000000, (int) (remaining % 1000000));
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted waiting for signal");
+        }
+        finally {
+            armed = false;
+        }
+
+        return (long)Math.ceil((fallTime - riseTime) / 1000.0);  // Return micro seconds
+    }
+
+    /**
+     * Records an echo edge reported by the pins.
+     */
+    private synchronized void echoEdge(boolean high, long nanoTime) {
+        if (!armed) {
+            return;
+        }
+        if (high) {
+            riseTime = nanoTime;
+        }
+        else if (riseTime != 0 && fallTime == 0) {
+            fallTime = nanoTime;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Gets the minimum time to wait between measurements, so the last echo has died away.
+     */
+    public static int getWaitDurationInMillis() {
+        return WAIT_DURATION_IN_MILLIS;
+    }
+
+    /**
+     * Gets how long after a trigger a reflection from the given range can still be heard, so another
+     * sensor triggered after that can't pick it up.
+     * @param maxRangeCm the furthest distance anything reflects from
+     */
+    public static long getEchoWindowNanos(double maxRangeCm) {
+        return ECHO_OVERHEAD_IN_MICROS * 1000 + (long) (2 * maxRangeCm * 1e7 / SOUND_SPEED);
+    }
+
+    /**
+     * Releases the sensor's pins.
+     */
+    public void close() {
+        pins.close();
+    }
+
 }
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * A ring buffer of timestamped distance readings with one writer and any number of readers.
+ *
+ * <p>Neither side ever takes a lock or waits. The writer claims a slot by bumping the claimed
+ * count, writes it, then bumps the written count. A reader copies what it needs and then checks the
+ * claimed count again, throwing away any reading the writer may have started overwriting in the
+ * meantime. The slots are atomic arrays so that check can't be reordered ahead of the copy.
+ * A failed reading is stored as NaN so it still counts towards the timeouts.
+ */
+public class DistanceRing {
+
+    private final int capacity;
+    private final AtomicIntegerArray distances;
+    private final AtomicLongArray times;
+
+    // Readings the writer has started and finished writing
+    private volatile long claimed;
+    private volatile long written;
+
+    /**
+     * @param capacity the number of readings kept
+     */
+    public DistanceRing(int capacity) {
+        this.capacity = capacity;
+        this.distances = new AtomicIntegerArray(capacity);
+        this.times = new AtomicLongArray(capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Adds a reading. Only one thread may call this.
+     * @param distance the distance in cm, or NaN if the reading failed
+     * @param time the System.nanoTime() of the reading
+     */
+    public void add(float distance, long time) {
+        long index = written;
+        claimed = index + 1;
+        int slot = (int) (index % capacity);
+        distances.set(slot, Float.floatToRawIntBits(distance));
+        times.set(slot, time);
+        written = index + 1;
+    }
+
+    /**
+     * Gets the number of readings ever added.
+     */
+    public long getCount() {
+        return written;
+    }
+
+    /**
+     * Copies the newest readings, newest first.
+     * @param distances where the distances are stored
+     * @param times where the times are stored, or null
+     * @param max the most readings to copy
+     * @return the number of readings copied
+     */
+    public int copyNewest(float[] distances, long[] times, int max) {
+        long end = written;
+        int count = (int) Math.min(Math.min(max, end), capacity);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((end - 1 - i) % capacity);
+            distances[i] = Float.intBitsToFloat(this.distances.get(slot));
+            if (times != null) {
+                times[i] = this.times.get(slot);
+            }
+        }
+
+        // Drop the oldest readings if the writer has since claimed their slots
+        long overwritten = claimed - capacity;
+        while (count > 0 && end - count < overwritten) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Gets the median of the valid readings among the newest ones.
+     * @param window the number of newest readings to look at
+     * @param scratch a buffer of at least window floats
+     * @return the median, or NaN if none of them are valid
+     */
+    public float median(int window, float[] scratch) {
+        return median(scratch, copyNewest(scratch, null, window));
+    }
+
+    /**
+     * Gets the median of the valid readings in a buffer, reordering it.
+     * @param scratch the readings, NaN for failed ones
+     * @param count the number of readings in the buffer
+     * @return the median, or NaN if none of them are valid
+     */
+    public static float median(float[] scratch, int count) {
+        int valid = 0;
+        for (int i = 0; i < count; i++) {
+            if (!Float.isNaN(scratch[i])) {
+                scratch[valid++] = scratch[i];
+            }
+        }
+        if (valid == 0) {
+            return Float.NaN;
+        }
+        Arrays.sort(scratch, 0, valid);
+        if (valid % 2 == 1) {
+            return scratch[valid / 2];
+        }
+        return (scratch[valid / 2 - 1] + scratch[valid / 2]) / 2;
+    }
+
+}
@@ -0,0 +1,267 @@
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+
+/**
+ * One distance sensor of a DistanceSensorArray and its readings in a DistanceRing.
+ *
+ * <p>Readers get the latest reading, the median of the last few and whether they can be trusted
+ * without ever blocking, and the same values are published to NetworkTables after every reading.
+ * The distance is valid while the latest good reading is younger than the maximum age. A timeout
+ * is recorded as a failed reading instead of being thrown at anybody.
+ */
+public class DistanceSampler {
+
+    // Readings kept, about 4 seconds at the fastest rate
+    private static final int CAPACITY = 64;
+    // How far the rate moves towards each new interval
+    private static final double RATE_GAIN = 0.2;
+
+    private final String name;
+    private final DistanceMonitor monitor;
+    private final DistanceRing ring = new DistanceRing(CAPACITY);
+    private final long periodNanos;
+    private final long echoWindowNanos;
+    private final int window;
+    private final long maxAgeNanos;
+
+    // Only used by the array's thread
+    private final Snapshot publishSnapshot;
+    // One for each thread reading without a buffer of its own
+    private final ThreadLocal<Snapshot> snapshots;
+    private long lastStart;
+    private double interval;
+
+    // Only changed by the array's thread
+    private volatile long timeouts;
+    private volatile double rate;
+
+    // NetworkTables entries, null if not publishing
+    private final NetworkTableEntry distanceEntry;
+    private final NetworkTableEntry medianEntry;
+    private final NetworkTableEntry validEntry;
+    private final NetworkTableEntry ageEntry;
+    private final NetworkTableEntry timeoutsEntry;
+    private final NetworkTableEntry rateEntry;
+
+    /**
+     * @param name the name of the sensor
+     * @param monitor the sensor
+     * @param periodMillis the time between readings, at least DistanceMonitor's wait duration
+     * @param window the number of readings the median is taken over
+     * @param maxAgeMillis how old the latest good reading can be for the distance to be valid
+     * @param maxRangeCm the furthest anything in front of the sensor can reflect from
+     * @param table the table to publish to, or null to not publish
+     */
+    public DistanceSampler(String name, DistanceMonitor monitor, double periodMillis, int window,
+                           double maxAgeMillis, double maxRangeCm, NetworkTable table) {
+        this.name = name;
+        this.monitor = monitor;
+        this.periodNanos = (long) (Math.max(periodMillis, DistanceMonitor.getWaitDurationInMillis()) * 1e6);
+        this.echoWindowNanos = DistanceMonitor.getEchoWindowNanos(maxRangeCm);
+        this.window = Math.min(window, CAPACITY);
+        this.maxAgeNanos = (long) (maxAgeMillis * 1e6);
+        this.publishSnapshot = new Snapshot(this.window);
+        this.snapshots = ThreadLocal.withInitial(() -> new Snapshot(this.window));
+
+        if (table != null) {
+            distanceEntry = table.getEntry("Distance");
+            medianEntry = table.getEntry("Median");
+            validEntry = table.getEntry("Valid");
+            ageEntry = table.getEntry("Age ms");
+            timeoutsEntry = table.getEntry("Timeouts");
+            rateEntry = table.getEntry("Rate Hz");
+        }
+        else {
+            distanceEntry = null;
+            medianEntry = null;
+            validEntry = null;
+            ageEntry = null;
+            timeoutsEntry = null;
+            rateEntry = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the shortest time between two readings of this sensor.
+     */
+    public long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * Gets how long after this sensor is triggered its reflections can still be heard.
+     */
+    public long getEchoWindowNanos() {
+        return echoWindowNanos;
+    }
+
+    /**
+     * Gets the System.nanoTime() the sensor can next be triggered, or now if it hasn't been yet.
+     */
+    long getNextDue(long now) {
+        return ring.getCount() == 0 ? now : lastStart + periodNanos;
+    }
+
+    /**
+     * Triggers the sensor, records the reading and publishes it. Only the array's thread may call this.
+     * @param start the System.nanoTime() of the trigger
+     */
+    void sample(long start) {
+        float distance;
+        try {
+            distance = monitor.measureDistance();
+        }
+        catch (TimeoutException ex) {
+            distance = Float.NaN;
+            timeouts++;
+        }
+
+        if (ring.getCount() > 0) {
+            long elapsed = start - lastStart;
+            interval = interval == 0 ? elapsed : interval + RATE_GAIN * (elapsed - interval);
+            rate = 1e9 / interval;
+        }
+        lastStart = start;
+        ring.add(distance, start);
+        publish();
+    }
+
+    private void publish() {
+        if (distanceEntry == null) {
+            return;
+        }
+        // Every value comes from the same copy of the readings
+        Snapshot snapshot = publishSnapshot.take(ring);
+        long now = System.nanoTime();
+        long age = snapshot.getAgeNanos(now);
+        distanceEntry.setDouble(snapshot.getLatest());
+        medianEntry.setDouble(snapshot.getMedian(window));
+        validEntry.setBoolean(age >= 0 && age <= maxAgeNanos);
+        ageEntry.setDouble(age / 1e6);
+        timeoutsEntry.setDouble(timeouts);
+        rateEntry.setDouble(rate);
+    }
+
+    /**
+     * Gets the latest good reading in cm, or NaN if there hasn't been one.
+     */
+    public float getLatest() {
+        return snapshots.get().take(ring).getLatest();
+    }
+
+    /**
+     * Gets the median in cm of the good readings among the last few, or NaN if there are none.
+     */
+    public float getMedian() {
+        return getMedian(snapshots.get().medianScratch);
+    }
+
+    /**
+     * Gets the median in cm of the good readings among the last few, or NaN if there are none.
+     * @param scratch a buffer of at least getWindow() floats
+     */
+    public float getMedian(float[] scratch) {
+        return ring.median(window, scratch);
+    }
+
+    /**
+     * Gets the number of readings the median is taken over.
+     */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Checks if the latest good reading is recent enough to trust.
+     * @param now the current System.nanoTime()
+     */
+    public boolean isValid(long now) {
+        long age = getAgeNanos(now);
+        return age >= 0 && age <= maxAgeNanos;
+    }
+
+    /**
+     * Gets how long ago the latest good reading was taken, or -1 if there hasn't been one.
+     * @param now the current System.nanoTime()
+     */
+    public long getAgeNanos(long now) {
+        return snapshots.get().take(ring).getAgeNanos(now);
+    }
+
+    /**
+     * A copy of the newest readings in buffers reused from one copy to the next.
+     */
+    private static final class Snapshot {
+
+        private final float[] distances = new float[CAPACITY];
+        private final long[] times = new long[CAPACITY];
+        private final float[] medianScratch;
+        private int count;
+        // The newest reading that didn't time out, or -1
+        private int latestGood;
+
+        Snapshot(int window) {
+            medianScratch = new float[window];
+        }
+
+        Snapshot take(DistanceRing ring) {
+            count = ring.copyNewest(distances, times, CAPACITY);
+            latestGood = -1;
+            for (int i = 0; i < count; i++) {
+                if (!Float.isNaN(distances[i])) {
+                    latestGood = i;
+                    break;
+                }
+            }
+            return this;
+        }
+
+        float getLatest() {
+            return latestGood >= 0 ? distances[latestGood] : Float.NaN;
+        }
+
+        long getAgeNanos(long now) {
+            return latestGood >= 0 ? now - times[latestGood] : -1;
+        }
+
+        float getMedian(int window) {
+            int n = Math.min(window, count);
+            System.arraycopy(distances, 0, medianScratch, 0, n);
+            return DistanceRing.median(medianScratch, n);
+        }
+    }
+
+    /**
+     * Gets the readings, for callers that want more than the latest and the median.
+     */
+    public DistanceRing getRing() {
+        return ring;
+    }
+
+    /**
+     * Gets the number of readings that timed out.
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Gets the smoothed number of readings per second.
+     */
+    public double getRate() {
+        return rate;
+    }
+
+    /**
+     * Releases the sensor's pins.
+     */
+    public void close() {
+        monitor.close();
+    }
+
+}
@@ -0,0 +1,106 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * A daemon thread that takes turns triggering several distance sensors so none hears another's echo.
+ *
+ * <p>Only one sensor is listening at a time. After a sensor is triggered the next one waits until
+ * the first one's reading is done and anything within its maximum range could have reflected back,
+ * so capping the range of sensors that face something close shortens every turn. Each sensor also
+ * waits its own period since its last trigger, so with few sensors the period sets the rate and
+ * with many the echo windows do. The sensor that can go soonest goes next, trying them in turn.
+ */
+public class DistanceSensorArray extends Thread {
+
+    private final List<DistanceSampler> sensors = new ArrayList<>();
+
+    // Only used by the array's thread
+    private int last = -1;
+    private long quietTime;
+
+    public DistanceSensorArray() {
+        super("Distance Sensors");
+        setDaemon(true);
+    }
+
+    /**
+     * Adds a sensor. Only call this before the array is started.
+     */
+    public void add(DistanceSampler sensor) {
+        sensors.add(sensor);
+    }
+
+    public List<DistanceSampler> getSensors() {
+        return Collections.unmodifiableList(sensors);
+    }
+
+    @Override
+    public void run() {
+        while (!sensors.isEmpty() && !Thread.interrupted()) {
+            try {
+                sampleNext();
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits for the next sensor's turn and takes its reading.
+     * @return the sensor that was read, or null if there are none
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public DistanceSampler sampleNext() throws InterruptedException {
+        int count = sensors.size();
+        if (count == 0) {
+            return null;
+        }
+
+        // Pick the sensor that can go soonest, starting after the last one so ties take turns
+        long now = System.nanoTime();
+        int next = -1;
+        long nextDue = 0;
+        for (int k = 1; k <= count; k++) {
+            int i = (last + k) % count;
+            long due = sensors.get(i).getNextDue(now);
+            if (due - quietTime < 0) {
+                due = quietTime;
+            }
+            if (next < 0 || due - nextDue < 0) {
+                next = i;
+                nextDue = due;
+            }
+        }
+
+        long sleep = nextDue - now;
+        if (sleep > 0) {
+            Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+        }
+
+        DistanceSampler sensor = sensors.get(next);
+        long start = System.nanoTime();
+        sensor.sample(start);
+
+        // Nobody listens until this sensor's reflections have died away
+        quietTime = start + sensor.getEchoWindowNanos();
+        long end = System.nanoTime();
+        if (end - quietTime > 0) {
+            quietTime = end;
+        }
+        last = next;
+        return sensor;
+    }
+
+    /**
+     * Releases all the sensors' pins.
+     */
+    public void close() {
+        for (DistanceSampler sensor : sensors) {
+            sensor.close();
+        }
+    }
+
+}
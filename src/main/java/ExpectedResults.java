@@ -0,0 +1,153 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * The results replayed frames are expected to give, from the CSV of an earlier replay or from the
+ * results a black box recording was saved with, so a replay can fail when detection changes.
+ *
+ * <p>A result matches if the line is found or not found in both, and when it's found the center is
+ * within a pixel and the angle within a degree. Frames without an expected result aren't compared.
+ */
+public class ExpectedResults {
+
+    private static final double POSITION_TOLERANCE = 1.0;
+    private static final double ANGLE_TOLERANCE = 1.0;
+
+    // Columns of the CSV written by CsvResultSink
+    private static final int FRAME_COLUMN = 0;
+    private static final int FOUND_COLUMN = 4;
+    private static final int ANGLE_COLUMN = 6;
+    private static final int CENTER_X_COLUMN = 7;
+    private static final int CENTER_Y_COLUMN = 8;
+
+    // Frame number to {found, center x, center y, angle}
+    private final Map<Integer, double[]> lines = new HashMap<>();
+
+    private ExpectedResults() {
+    }
+
+    /**
+     * Reads the results from a CSV written by CsvResultSink.
+     */
+    public static ExpectedResults fromCsv(File file) throws IOException {
+        ExpectedResults expected = new ExpectedResults();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            int number = 1;
+            while ((line = reader.readLine()) != null) {
+                number++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                List<String> columns = split(line);
+                try {
+                    expected.lines.put(Integer.parseInt(columns.get(FRAME_COLUMN)), new double[] {
+                        Boolean.parseBoolean(columns.get(FOUND_COLUMN)) ? 1 : 0,
+                        Double.parseDouble(columns.get(CENTER_X_COLUMN)),
+                        Double.parseDouble(columns.get(CENTER_Y_COLUMN)),
+                        Double.parseDouble(columns.get(ANGLE_COLUMN)),
+                    });
+                }
+                catch (NumberFormatException | IndexOutOfBoundsException ex) {
+                    throw new IOException("line " + number + " isn't a replay result: " + line, ex);
+                }
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Takes the results a black box recording was saved with.
+     */
+    public static ExpectedResults fromRecording(RecordingFileSource recording) {
+        ExpectedResults expected = new ExpectedResults();
+        double[] result = new double[LineResult.SIZE];
+        for (int i = 0; i < recording.getCount(); i++) {
+            if (recording.getRecorded(i, result)) {
+                boolean found = result[LineResult.AREA] > 0;
+                expected.lines.put(i, new double[] {
+                    found ? 1 : 0, result[LineResult.CENTER_X], result[LineResult.CENTER_Y], result[LineResult.ANGLE],
+                });
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Splits a CSV line, undoing CsvResultSink's quoting.
+     */
+    private static List<String> split(String line) {
+        List<String> columns = new ArrayList<>();
+        StringBuilder column = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    column.append('"');
+                    i++;
+                }
+                else if (c == '"') {
+                    quoted = false;
+                }
+                else {
+                    column.append(c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                columns.add(column.toString());
+                column.setLength(0);
+            }
+            else {
+                column.append(c);
+            }
+        }
+        columns.add(column.toString());
+        return columns;
+    }
+
+    /**
+     * Gets the number of frames with an expected result.
+     */
+    public int size() {
+        return lines.size();
+    }
+
+    /**
+     * Checks if there is an expected result for a frame.
+     */
+    public boolean has(int index) {
+        return lines.containsKey(index);
+    }
+
+    /**
+     * Checks if a frame's result matches the one expected, which must exist.
+     */
+    public boolean matches(int index, LineResult result) {
+        double[] line = lines.get(index);
+        boolean found = line[0] != 0;
+        if (found != result.found) {
+            return false;
+        }
+        if (!found) {
+            return true;
+        }
+        // The angle is an axis, so one half turn apart is the same
+        double angleError = Math.IEEEremainder(result.angle - line[3], 180);
+        return Math.abs(result.centerX - line[1]) <= POSITION_TOLERANCE
+            && Math.abs(result.centerY - line[2]) <= POSITION_TOLERANCE
+            && Math.abs(angleError) <= ANGLE_TOLERANCE;
+    }
+
+}
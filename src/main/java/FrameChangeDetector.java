@@ -0,0 +1,86 @@
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+
+/**
+ * Tells whether a frame differs enough from the last processed one to be worth processing.
+ *
+ * <p>Each frame is shrunk to a small thumbnail and compared with the thumbnail of the last frame
+ * that was processed, so a slow drift still adds up to a change. The difference is the mean
+ * absolute difference of the thumbnail's channel values, from 0 to 255. A frame is always
+ * processed after too many unchanged frames in a row, so a missed change can't last.
+ */
+public class FrameChangeDetector {
+
+    private static final Size THUMBNAIL_SIZE = new Size(16, 12);
+
+    private final double threshold;
+    private final int maxUnchanged;
+
+    private final Mat thumbnail = new Mat();
+    private byte[] current = new byte[0];
+    private byte[] reference = new byte[0];
+    private boolean hasReference;
+    private int unchanged;
+    private double difference;
+
+    /**
+     * @param threshold the largest mean difference that counts as unchanged
+     * @param maxUnchanged the most frames in a row that can count as unchanged
+     */
+    public FrameChangeDetector(double threshold, int maxUnchanged) {
+        this.threshold = threshold;
+        this.maxUnchanged = maxUnchanged;
+    }
+
+    /**
+     * Checks if the frame is unchanged from the last processed frame. If it isn't, it becomes the
+     * last processed frame.
+     * @param force true to treat the frame as changed whatever it looks like
+     */
+    public boolean isUnchanged(Mat frame, boolean force) {
+        Imgproc.resize(frame, thumbnail, THUMBNAIL_SIZE, 0, 0, Imgproc.INTER_AREA);
+        int length = (int) (thumbnail.total() * thumbnail.channels());
+        if (current.length != length) {
+            current = new byte[length];
+            reference = new byte[length];
+            hasReference = false;
+        }
+        thumbnail.get(0, 0, current);
+
+        if (hasReference) {
+            long sum = 0;
+            for (int i = 0; i < length; i++) {
+                sum += Math.abs((current[i] & 0xFF) - (reference[i] & 0xFF));
+            }
+            difference = (double) sum / length;
+            if (!force && difference <= threshold && unchanged < maxUnchanged) {
+                unchanged++;
+                return true;
+            }
+        }
+
+        byte[] swap = reference;
+        reference = current;
+        current = swap;
+        hasReference = true;
+        unchanged = 0;
+        return false;
+    }
+
+    /**
+     * Gets the mean difference of the last frame checked from the last processed frame.
+     */
+    public double getDifference() {
+        return difference;
+    }
+
+    /**
+     * Frees the native memory of the thumbnail.
+     */
+    public void release() {
+        thumbnail.release();
+    }
+
+}
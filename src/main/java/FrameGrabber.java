@@ -0,0 +1,94 @@
+import edu.wpi.cscore.VideoSource;
+
+
+/**
+ * A thread that grabs frames from a camera as fast as it delivers them and keeps only the newest
+ * one, so processing always works on the freshest frame no matter how slow it is.
+ *
+ * <p>Replayed frames can instead be spaced out by their capture times, to see what the cameras
+ * would have given, or handed over as fast as they are processed without skipping any, to check
+ * every result and measure throughput. The thread ends after the last frame.
+ */
+public class FrameGrabber extends Thread {
+
+    /**
+     * How frames are handed over for processing.
+     */
+    public enum Pace {
+        // As the source delivers them, as from a camera
+        LIVE,
+        // Spaced out by their capture times, as the camera captured them
+        REAL_TIME,
+        // Each once the last one was taken, so none are skipped
+        EVERY_FRAME
+    }
+
+    private final FrameSource source;
+    private final Pace pace;
+    private final LatestFrame frames = new LatestFrame();
+    private volatile boolean ended;
+
+    public FrameGrabber(VideoSource source) {
+        this(new CameraFrameSource(source), Pace.LIVE);
+    }
+
+    public FrameGrabber(FrameSource source, Pace pace) {
+        super("Capture " + source.getName());
+        this.source = source;
+        this.pace = pace;
+        setDaemon(true);
+    }
+
+    /**
+     * Gets the buffer the grabbed frames are published to.
+     */
+    public LatestFrame getFrames() {
+        return frames;
+    }
+
+    /**
+     * Checks if the last frame has been published.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    @Override
+    public void run() {
+        long firstTime = 0;
+        long firstNanos = 0;
+        try {
+            while (!Thread.interrupted()) {
+                if (pace == Pace.EVERY_FRAME) {
+                    frames.awaitTaken();
+                }
+                long frameTime = source.readFrame(frames.getWriteMat());
+                if (frameTime == FrameSource.END) {
+                    return;
+                }
+                if (frameTime == 0) {
+                    System.err.println(getName() + ": " + source.getError());
+                    continue;
+                }
+                if (pace == Pace.REAL_TIME) {
+                    if (firstNanos == 0) {
+                        firstTime = frameTime;
+                        firstNanos = System.nanoTime();
+                    }
+                    long sleep = (frameTime - firstTime) * 1000 - (System.nanoTime() - firstNanos);
+                    if (sleep > 0) {
+                        Thread.sleep(sleep / 1000000, (int) (sleep % 1000000));
+                    }
+                }
+                frames.publish(frameTime);
+            }
+        }
+        catch (InterruptedException ex) {
+            return;
+        }
+        finally {
+            ended = true;
+        }
+    }
+
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.opencv.core.Mat;
+
+
+/**
+ * Keeps a camera's last few seconds of frames and the results published for them, so they can be
+ * saved when detection goes wrong in a match.
+ *
+ * <p>The frames are copied on the capture thread into Mats allocated once per slot, which is a
+ * single memcpy, so the pipeline never waits for the recorder. The results are added by frame time
+ * when they are published. Saving writes the frames from oldest to newest into a memory mapped
+ * file, copying each one out of the ring under the lock, so the capture thread only ever waits for
+ * one frame's copy. The frames recorded while saving are kept, and only the oldest are lost if the
+ * capture thread catches up with the save.
+ *
+ * <p>A saved file is read back by RecordingFileSource. It's laid out as:
+ * <pre>
+ * magic "STARPIBB", int version, UTF camera name, double fps, int frames, then for each frame:
+ * long frame time, int rows, int cols, int type, int 1 if it has a result, double[LineResult.SIZE]
+ * result, the frame's pixels
+ * </pre>
+ */
+public class FrameRecorder implements ResultSink {
+
+    static final byte[] MAGIC = "STARPIBB".getBytes(StandardCharsets.US_ASCII);
+    static final int VERSION = 1;
+    static final int FRAME_HEADER_BYTES = Long.BYTES + 4 * Integer.BYTES + LineResult.SIZE * Double.BYTES;
+
+    private final String name;
+    private final int capacity;
+
+    // Guarded by this
+    private final Mat[] mats;
+    private final long[] times;
+    private final long[] numbers;
+    private final long[] resultNumbers;
+    private final double[][] results;
+    private long recorded;
+
+    // Only changed by the capture thread
+    private volatile double copyNanos;
+
+    // Only used by the thread saving
+    private byte[] pixels = new byte[0];
+
+    /**
+     * @param name the camera's name
+     * @param capacity the number of frames kept
+     */
+    public FrameRecorder(String name, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.name = name;
+        this.capacity = capacity;
+        mats = new Mat[capacity];
+        times = new long[capacity];
+        numbers = new long[capacity];
+        resultNumbers = new long[capacity];
+        results = new double[capacity][LineResult.SIZE];
+        for (int i = 0; i < capacity; i++) {
+            numbers[i] = -1;
+            resultNumbers[i] = -1;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Copies a frame into the ring, replacing the oldest. Only the capture thread may call this.
+     */
+    public void record(Mat frame, long frameTime) {
+        long start = System.nanoTime();
+        synchronized (this) {
+            long number = recorded;
+            int i = (int) (number % capacity);
+            if (mats[i] == null) {
+                mats[i] = new Mat();
+            }
+            frame.copyTo(mats[i]);
+            times[i] = frameTime;
+            numbers[i] = number;
+            recorded = number + 1;
+        }
+        long nanos = System.nanoTime() - start;
+        copyNanos = copyNanos == 0 ? nanos : copyNanos + (nanos - copyNanos) * 0.05;
+    }
+
+    /**
+     * Gets the smoothed time a frame takes to record.
+     */
+    public double getCopyNanos() {
+        return copyNanos;
+    }
+
+    @Override
+    public synchronized void resultPublished(long frameTime, LineResult result, LineCandidates candidates,
+                                             LineTracker tracker, long processNanos) {
+        // The frame is almost always one of the last few recorded
+        long oldest = Math.max(0, recorded - capacity);
+        for (long number = recorded - 1; number >= oldest; number--) {
+            int i = (int) (number % capacity);
+            if (times[i] == frameTime) {
+                System.arraycopy(result.toArray(), 0, results[i], 0, LineResult.SIZE);
+                resultNumbers[i] = number;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the bytes of native image data held.
+     */
+    public synchronized long nativeBytes() {
+        long bytes = 0;
+        for (Mat mat : mats) {
+            if (mat != null) {
+                bytes += mat.total() * mat.elemSize();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Saves the frames held to a file. Frames keep being recorded while saving.
+     * @return the number of frames saved, 0 without creating the file if none were recorded
+     */
+    public int save(Path file) throws IOException {
+        // Size the file for the frames held now, the ones recorded meanwhile replace them
+        long first;
+        long last;
+        long size = MAGIC.length + Integer.BYTES + 2 + name.getBytes(StandardCharsets.UTF_8).length
+            + Double.BYTES + Integer.BYTES;
+        double fps;
+        synchronized (this) {
+            last = recorded;
+            first = Math.max(0, last - capacity);
+            if (last == first) {
+                return 0;
+            }
+            for (long number = first; number < last; number++) {
+                Mat mat = mats[(int) (number % capacity)];
+                size += FRAME_HEADER_BYTES + mat.total() * mat.elemSize();
+            }
+            fps = 0;
+            if (last - first > 1) {
+                long span = times[(int) ((last - 1) % capacity)] - times[(int) (first % capacity)];
+                fps = span > 0 ? (last - first - 1) * 1e6 / span : 0;
+            }
+        }
+
+        int saved = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.put(MAGIC);
+            buffer.putInt(VERSION);
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) nameBytes.length);
+            buffer.put(nameBytes);
+            buffer.putDouble(fps);
+            int countPosition = buffer.position();
+            buffer.putInt(0);
+
+            for (long number = first; number < last; number++) {
+                if (saveFrame(number, buffer)) {
+                    saved++;
+                }
+            }
+            buffer.putInt(countPosition, saved);
+            int length = buffer.position();
+            buffer.force();
+            channel.truncate(length);
+        }
+        return saved;
+    }
+
+    /**
+     * Writes a frame to the buffer if it's still held.
+     * @return false if it was replaced or there is no room for it
+     */
+    private boolean saveFrame(long number, MappedByteBuffer buffer) {
+        long frameTime;
+        int rows;
+        int cols;
+        int type;
+        int bytes;
+        boolean hasResult;
+        double[] result = new double[LineResult.SIZE];
+        synchronized (this) {
+            int i = (int) (number % capacity);
+            if (numbers[i] != number) {
+                return false;
+            }
+            Mat mat = mats[i];
+            bytes = (int) (mat.total() * mat.elemSize());
+            if (buffer.remaining() < FRAME_HEADER_BYTES + bytes) {
+                return false;
+            }
+            // Mat.get fills the whole array, so it has to be the frame's size
+            if (pixels.length != bytes) {
+                pixels = new byte[bytes];
+            }
+            if (bytes > 0) {
+                mat.get(0, 0, pixels);
+            }
+            frameTime = times[i];
+            rows = mat.rows();
+            cols = mat.cols();
+            type = mat.type();
+            hasResult = resultNumbers[i] == number;
+            if (hasResult) {
+                System.arraycopy(results[i], 0, result, 0, LineResult.SIZE);
+            }
+        }
+
+        // The capture thread can go on while the copy is written to the file
+        buffer.putLong(frameTime);
+        buffer.putInt(rows);
+        buffer.putInt(cols);
+        buffer.putInt(type);
+        buffer.putInt(hasResult ? 1 : 0);
+        for (double value : result) {
+            buffer.putDouble(value);
+        }
+        buffer.put(pixels, 0, bytes);
+        return true;
+    }
+
+}
@@ -0,0 +1,35 @@
+import org.opencv.core.Mat;
+
+
+/**
+ * Where a Vision gets its frames from: a camera, or recorded or generated frames to replay.
+ */
+public interface FrameSource {
+
+    // Returned by readFrame when there are no more frames
+    long END = -1;
+
+    /**
+     * Gets the name the frames are processed and published under.
+     */
+    String getName();
+
+    /**
+     * Waits for the next frame and reads it.
+     * @param frame the Mat to read the frame into
+     * @return the frame's capture time in microseconds on the NetworkTables clock, 0 if it
+     *         couldn't be read (see getError), or END if there are no more frames
+     */
+    long readFrame(Mat frame);
+
+    /**
+     * Gets why the last frame couldn't be read.
+     */
+    String getError();
+
+    /**
+     * Releases whatever the source holds open.
+     */
+    void close();
+
+}
@@ -0,0 +1,51 @@
+import org.opencv.core.Scalar;
+
+
+/**
+ * An immutable snapshot of the HSV threshold values used by the LinePipeline.
+ *
+ * <p>The lower and upper bounds are built once so the pipeline can reuse them on every frame.
+ */
+public final class HsvThresholds {
+
+    public final double hueMin;
+    public final double hueMax;
+    public final double saturationMin;
+    public final double saturationMax;
+    public final double valueMin;
+    public final double valueMax;
+
+    public final Scalar lower;
+    public final Scalar upper;
+
+    public HsvThresholds(double hueMin, double hueMax,
+                         double saturationMin, double saturationMax,
+                         double valueMin, double valueMax) {
+        this.hueMin = hueMin;
+        this.hueMax = hueMax;
+        this.saturationMin = saturationMin;
+        this.saturationMax = saturationMax;
+        this.valueMin = valueMin;
+        this.valueMax = valueMax;
+        this.lower = new Scalar(hueMin, saturationMin, valueMin);
+        this.upper = new Scalar(hueMax, saturationMax, valueMax);
+    }
+
+    /**
+     * Checks if this snapshot holds the same values as the given values.
+     */
+    public boolean matches(double hueMin, double hueMax,
+                           double saturationMin, double saturationMax,
+                           double valueMin, double valueMax) {
+        return this.hueMin == hueMin && this.hueMax == hueMax
+            && this.saturationMin == saturationMin && this.saturationMax == saturationMax
+            && this.valueMin == valueMin && this.valueMax == valueMax;
+    }
+
+    @Override
+    public String toString() {
+        return "H " + hueMin + "-" + hueMax + ", S " + saturationMin + "-" + saturationMax
+            + ", V " + valueMin + "-" + valueMax;
+    }
+
+}
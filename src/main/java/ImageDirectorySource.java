@@ -0,0 +1,59 @@
+import java.io.File;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+
+/**
+ * Replays the images in a directory in the order of their names, such as the GRIP samples.
+ */
+public class ImageDirectorySource extends ReplayFrameSource {
+
+    private final File[] files;
+
+    /**
+     * @param dir the directory of JPEG, PNG or BMP images
+     * @param fps the rate to replay the images at in real time
+     */
+    public ImageDirectorySource(File dir, double fps) {
+        super(dir.getName(), fps);
+        files = dir.listFiles((parent, name) -> isImage(name));
+        if (files == null || files.length == 0) {
+            throw new IllegalArgumentException("no images in " + dir.getPath());
+        }
+        Arrays.sort(files);
+    }
+
+    private static boolean isImage(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png") || lower.endsWith(".bmp");
+    }
+
+    public int getCount() {
+        return files.length;
+    }
+
+    @Override
+    protected boolean read(int index, Mat frame) {
+        if (index >= files.length) {
+            return false;
+        }
+        Mat image = Imgcodecs.imread(files[index].getPath());
+        if (image.empty()) {
+            frame.release();
+        }
+        else {
+            image.copyTo(frame);
+        }
+        image.release();
+        return true;
+    }
+
+    @Override
+    public String getLabel(int index) {
+        return index >= 0 && index < files.length ? files[index].getName() : "";
+    }
+
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+
+/**
+ * Keeps the most recent latency samples so percentiles can be read over a rolling window.
+ *
+ * <p>Recording is a single array store. The samples are only sorted when a percentile is read,
+ * which happens when the metrics are published. Not thread safe.
+ */
+public class LatencyHistogram {
+
+    private final long[] samples;
+    private final long[] sorted;
+    private int next;
+    private int count;
+    private boolean sortedValid;
+
+    public LatencyHistogram(int window) {
+        samples = new long[window];
+        sorted = new long[window];
+    }
+
+    /**
+     * Adds a sample, replacing the oldest one once the window is full.
+     */
+    public void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        sortedValid = false;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets a percentile of the samples in the window.
+     * @param percentile from 0 to 100
+     * @return the sample in nanoseconds, or 0 if there are none
+     */
+    public long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        if (!sortedValid) {
+            System.arraycopy(samples, 0, sorted, 0, count);
+            Arrays.sort(sorted, 0, count);
+            sortedValid = true;
+        }
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    public long getMax() {
+        return getPercentile(100);
+    }
+
+    /**
+     * Drops every sample.
+     */
+    public void clear() {
+        next = 0;
+        count = 0;
+        sortedValid = false;
+    }
+
+}
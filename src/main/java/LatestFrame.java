@@ -0,0 +1,149 @@
+import org.opencv.core.Mat;
+
+
+/**
+ * A triple buffer that hands the newest captured frame to the processing thread.
+ *
+ * <p>The capture thread writes into its own Mat and publishes it, which swaps it with the ready
+ * Mat. The processing thread takes the ready Mat, which swaps it with the one it processed last.
+ * Neither thread ever waits on the other to finish with a frame, and a frame that is replaced
+ * before it is taken is counted as skipped instead of being processed late.
+ */
+public class LatestFrame {
+
+    private final Mat[] mats = {new Mat(), new Mat(), new Mat()};
+    private final long[] times = new long[3];
+    private volatile Runnable publishListener;
+
+    // Guarded by this
+    private int writeIndex = 0;
+    private int readyIndex = 1;
+    private int readIndex = 2;
+    private boolean fresh;
+    private long published;
+    private long skipped;
+
+    //--------------//
+    // Capture side //
+    //--------------//
+
+    /**
+     * Gets the Mat to capture the next frame into. Only the capture thread may use it.
+     */
+    public synchronized Mat getWriteMat() {
+        return mats[writeIndex];
+    }
+
+    /**
+     * Makes the frame in the write Mat the newest frame.
+     * @param frameTime the capture time of the frame
+     */
+    public void publish(long frameTime) {
+        synchronized (this) {
+            times[writeIndex] = frameTime;
+            if (fresh) {
+                skipped++;
+            }
+            int ready = readyIndex;
+            readyIndex = writeIndex;
+            writeIndex = ready;
+            fresh = true;
+            published++;
+            notifyAll();
+        }
+
+        // Called without holding the lock so the listener can take its own locks
+        Runnable listener = publishListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Waits until the newest frame has been taken, so publishing the next one won't skip it.
+     */
+    public synchronized void awaitTaken() throws InterruptedException {
+        while (fresh) {
+            wait();
+        }
+    }
+
+    /**
+     * Sets something to run on the capture thread after every frame is published.
+     */
+    public void setPublishListener(Runnable listener) {
+        this.publishListener = listener;
+    }
+
+    //-----------------//
+    // Processing side //
+    //-----------------//
+
+    /**
+     * Checks if a frame has been published since the last one was taken.
+     */
+    public synchronized boolean hasFresh() {
+        return fresh;
+    }
+
+    /**
+     * Takes the newest frame if there is one, without waiting.
+     * @return true if a frame was taken
+     */
+    public synchronized boolean poll() {
+        if (!fresh) {
+            return false;
+        }
+        int ready = readyIndex;
+        readyIndex = readIndex;
+        readIndex = ready;
+        fresh = false;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Waits for a frame newer than the last one taken and takes it.
+     * @return true if a frame was taken, false if the timeout passed first
+     */
+    public synchronized boolean take(long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (!fresh) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return poll();
+    }
+
+    /**
+     * Gets the frame that was taken last. Only the processing thread may use it.
+     */
+    public synchronized Mat getReadMat() {
+        return mats[readIndex];
+    }
+
+    /**
+     * Gets the capture time of the frame that was taken last.
+     */
+    public synchronized long getReadTime() {
+        return times[readIndex];
+    }
+
+    /**
+     * Gets the number of frames published.
+     */
+    public synchronized long getPublished() {
+        return published;
+    }
+
+    /**
+     * Gets the number of frames replaced by a newer one before they were taken.
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+}
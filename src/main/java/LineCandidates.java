@@ -0,0 +1,205 @@
+import java.util.List;
+
+import org.opencv.core.MatOfPoint;
+
+
+/**
+ * Ranks the filtered contours of a frame by how much they look like the line.
+ *
+ * <p>Every contour is read once into a primitive buffer and its moments give its area, center,
+ * orientation and elongation. The score is a weighted mean, from 0 to 1, of
+ * <ul>
+ * <li>its area, saturating as it grows past a fiftieth of the frame,</li>
+ * <li>its elongation, since the line is long and thin,</li>
+ * <li>how close its orientation is to the previous line's, and</li>
+ * <li>how close its center is to the previous line's.</li>
+ * </ul>
+ * Without a previous line the last two score a neutral 0.5. Only the best K are kept.
+ *
+ * <p>The published array is {@code [count, then score, area, angle, centerX, centerY for each]},
+ * where the angle is the orientation of the contour's principal axis in degrees from the x axis.
+ */
+public class LineCandidates {
+
+    public static final int SCORE = 0;
+    public static final int AREA = 1;
+    public static final int ANGLE = 2;
+    public static final int CENTER_X = 3;
+    public static final int CENTER_Y = 4;
+    public static final int FIELDS = 5;
+
+    // Weights of the parts of the score
+    private double areaWeight = 1;
+    private double elongationWeight = 1;
+    private double angleWeight = 1;
+    private double distanceWeight = 1;
+
+    private final int maxCandidates;
+
+    // The best candidates, best first
+    private final int[] indexes;
+    private final double[] values;
+    private final double[] orientations;
+    private int count;
+
+    // The previous line
+    private boolean hasPrevious;
+    private double previousX;
+    private double previousY;
+    private double previousOrientation;
+
+    // Reusable buffers
+    private final ContourPoints points = new ContourPoints();
+    private final double[] moments = new double[6];
+    private final double[] array;
+
+    /**
+     * @param maxCandidates the number of best candidates to keep
+     */
+    public LineCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+        this.indexes = new int[maxCandidates];
+        this.values = new double[maxCandidates * FIELDS];
+        this.orientations = new double[maxCandidates];
+        this.array = new double[1 + maxCandidates * FIELDS];
+    }
+
+    public void setWeights(double area, double elongation, double angle, double distance) {
+        this.areaWeight = area;
+        this.elongationWeight = elongation;
+        this.angleWeight = angle;
+        this.distanceWeight = distance;
+    }
+
+    /**
+     * Scores the contours and keeps the best.
+     * @param contours the filtered contours
+     * @param frameWidth the width of the frame the contours are in
+     * @param frameHeight the height of the frame the contours are in
+     */
+    public void rank(List<MatOfPoint> contours, int frameWidth, int frameHeight) {
+        count = 0;
+        double areaScale = frameWidth * frameHeight / 50.0;
+        double distanceScale = Math.hypot(frameWidth, frameHeight) / 4;
+        double twoSigmaSquared = 2 * distanceScale * distanceScale;
+        double weightSum = areaWeight + elongationWeight + angleWeight + distanceWeight;
+
+        for (int i = 0; i < contours.size(); i++) {
+            int vertexCount = points.read(contours.get(i));
+            ContourGeometry.moments(points.getPoints(), vertexCount, moments);
+            double area = moments[0];
+            if (area <= 0) {
+                continue;
+            }
+
+            // Central moments give the principal axes
+            double centerX = moments[1] / area;
+            double centerY = moments[2] / area;
+            double mu20 = moments[3] / area - centerX * centerX;
+            double mu11 = moments[4] / area - centerX * centerY;
+            double mu02 = moments[5] / area - centerY * centerY;
+            double orientation = 0.5 * Math.atan2(2 * mu11, mu20 - mu02);
+            double half = (mu20 + mu02) / 2;
+            double spread = Math.sqrt((mu20 - mu02) * (mu20 - mu02) / 4 + mu11 * mu11);
+            double major = half + spread;
+            double minor = half - spread;
+
+            double areaScore = area / (area + areaScale);
+            double elongationScore = minor > 0 ? 1 - Math.sqrt(minor / major) : 1;
+            double angleScore = 0.5;
+            double distanceScore = 0.5;
+            if (hasPrevious) {
+                // The orientation is an axis, so a half turn is the same
+                angleScore = (1 + Math.cos(2 * (orientation - previousOrientation))) / 2;
+                double dx = centerX - previousX;
+                double dy = centerY - previousY;
+                distanceScore = Math.exp(-(dx * dx + dy * dy) / twoSigmaSquared);
+            }
+            double score = (areaWeight * areaScore + elongationWeight * elongationScore
+                + angleWeight * angleScore + distanceWeight * distanceScore) / weightSum;
+
+            insert(i, score, area, orientation, centerX, centerY);
+        }
+    }
+
+    /**
+     * Inserts a candidate into the best ones if it is good enough.
+     */
+    private void insert(int index, double score, double area, double orientation, double centerX, double centerY) {
+        int position = count;
+        while (position > 0 && values[(position - 1) * FIELDS + SCORE] < score) {
+            position--;
+        }
+        if (position >= maxCandidates) {
+            return;
+        }
+        int last = Math.min(count, maxCandidates - 1);
+        for (int i = last; i > position; i--) {
+            indexes[i] = indexes[i - 1];
+            orientations[i] = orientations[i - 1];
+            System.arraycopy(values, (i - 1) * FIELDS, values, i * FIELDS, FIELDS);
+        }
+        indexes[position] = index;
+        orientations[position] = orientation;
+        int base = position * FIELDS;
+        values[base + SCORE] = score;
+        values[base + AREA] = area;
+        values[base + ANGLE] = Math.toDegrees(orientation);
+        values[base + CENTER_X] = centerX;
+        values[base + CENTER_Y] = centerY;
+        if (count < maxCandidates) {
+            count++;
+        }
+    }
+
+    /**
+     * Gets the number of candidates kept from the last frame.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Gets the index in the contour list of the candidate at the given rank, 0 being the best.
+     */
+    public int getIndex(int rank) {
+        return indexes[rank];
+    }
+
+    /**
+     * Gets one of the values of a candidate, SCORE through CENTER_Y.
+     */
+    public double get(int rank, int field) {
+        return values[rank * FIELDS + field];
+    }
+
+    /**
+     * Remembers the candidate at the given rank as the line, to score the next frame against.
+     */
+    public void setPrevious(int rank) {
+        hasPrevious = true;
+        previousX = values[rank * FIELDS + CENTER_X];
+        previousY = values[rank * FIELDS + CENTER_Y];
+        previousOrientation = orientations[rank];
+    }
+
+    /**
+     * Forgets the previous line.
+     */
+    public void clearPrevious() {
+        hasPrevious = false;
+    }
+
+    /**
+     * Gets the candidates as the array that is published. The same array is reused every call.
+     */
+    public double[] toArray() {
+        array[0] = count;
+        System.arraycopy(values, 0, array, 1, count * FIELDS);
+        for (int i = 1 + count * FIELDS; i < array.length; i++) {
+            array[i] = 0;
+        }
+        return array;
+    }
+
+}
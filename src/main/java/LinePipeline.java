@@ -17,67 +17,428 @@ import org.opencv.imgproc.*;
 */
 public class LinePipeline implements VisionPipeline {
 
+    /**
+     * The ways the HSV threshold step can be run.
+     */
+    public enum ThresholdEngine {
+        // Imgproc.cvtColor to HSV followed by Core.inRange
+        OPENCV,
+        // A BGR lookup table built from the thresholds, see LookupThreshold
+        LOOKUP
+    }
+
+    //Settings
+    private ThresholdEngine thresholdEngine = ThresholdEngine.OPENCV;
+    private int lookupBits = 8;
+    private final LookupThreshold.Buffers lookupBuffers = new LookupThreshold.Buffers();
+    private final ContourFilter contourFilter = new ContourFilter();
+    private final MatPool matPool = new MatPool();
+    private Rect region;
+    private int pyramidLevels = 0;
+    private FrameChangeDetector changeDetector;
+    private HsvThresholds processedThresholds;
+    private boolean unchanged;
+    private int frameWidth;
+    private int frameHeight;
+
+    //Part of the last frame that was searched
+    private final Rect searchedRegion = new Rect();
+    private boolean searchedWholeFrame = true;
+    private final Point regionOffset = new Point();
+    private long regionRetries;
+
+    //Timing of the last frame
+    private long processStartNanos;
+    private long thresholdNanos;
+    private long findContoursNanos;
+    private long filterContoursNanos;
+
     //Outputs
     private Mat hsvThresholdOutput = new Mat();
+    // The input converted to HSV, kept apart from the threshold output so neither changes type
+    private final Mat hsv = new Mat();
     private ArrayList<MatOfPoint> findContoursOutput = new ArrayList<MatOfPoint>();
     private ArrayList<MatOfPoint> filterContoursOutput = new ArrayList<MatOfPoint>();
 
+    //Pyramid mode working state
+    private static final int MIN_PYRAMID_SIZE = 16;
+    private final ArrayList<MatOfPoint> coarseContours = new ArrayList<MatOfPoint>();
+    private final ArrayList<MatOfPoint> patchContours = new ArrayList<MatOfPoint>();
+    private final ArrayList<Rect> patches = new ArrayList<Rect>();
+    private final Point patchOffset = new Point();
+    // Frame sized, so each patch is converted and thresholded into a view without reallocating
+    private final Mat patchHsv = new Mat();
+    private final Mat patchMask = new Mat();
+
     static {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
     }
 
+    public LinePipeline() {
+        // Filter_Contours0 settings
+        contourFilter.setMinArea(100.0);
+        contourFilter.setMinPerimeter(0.0);
+        contourFilter.setWidth(20.0, 1000.0);
+        contourFilter.setHeight(0.0, 1000.0);
+        contourFilter.setSolidity(0, 100);
+        contourFilter.setVertexCount(0.0, 1000000.0);
+        contourFilter.setRatio(0.0, 1000.0);
+    }
+
     /**
      * This is the primary method that runs the entire pipeline and updates the outputs.
      */
     @Override
     public void process(Mat source0) {
-        // Step HSV_Threshold0:
-        Mat hsvThresholdInput = source0;
-                
-        double hsvThresholdHueMin = Brain.getHueMin();
-        double hsvThresholdHueMax = Brain.getHueMax();
-        double hsvThresholdSaturationMin = Brain.getSaturationMin();
-        double hsvThresholdSaturationMax = Brain.getSaturationMax();
-        double hsvThresholdValueMin = Brain.getValueMin();
-        double hsvThresholdValueMax = Brain.getValueMax();
-                
-        double[] hsvThresholdHue = {hsvThresholdHueMin, hsvThresholdHueMax};
-        double[] hsvThresholdSaturation = {hsvThresholdSaturationMin, hsvThresholdSaturationMax};
-        double[] hsvThresholdValue = {hsvThresholdValueMin, hsvThresholdValueMax};
-        
-        hsvThreshold(hsvThresholdInput, hsvThresholdHue, hsvThresholdSaturation, hsvThresholdValue, hsvThresholdOutput);
-
-        // Step Find_Contours0:
-        Mat findContoursInput = hsvThresholdOutput;
-        boolean findContoursExternalOnly = false;
-        findContours(findContoursInput, findContoursExternalOnly, findContoursOutput);
+        processStartNanos = System.nanoTime();
+        frameWidth = source0.cols();
+        frameHeight = source0.rows();
+
+        // Keep the outputs of the last frame if nothing has changed since
+        HsvThresholds hsvThresholdThresholds = Brain.getHsvThresholds();
+        boolean thresholdsChanged = hsvThresholdThresholds != processedThresholds;
+        unchanged = changeDetector != null && changeDetector.isUnchanged(source0, thresholdsChanged);
+        if (unchanged) {
+            thresholdNanos = 0;
+            findContoursNanos = 0;
+            filterContoursNanos = 0;
+            return;
+        }
+        processedThresholds = hsvThresholdThresholds;
+
+        // Hand back the Mats used by the last frame
+        matPool.recycle();
+
+        // Only search the region if one is set, with the contours offset back to the whole frame
+        searchedWholeFrame = !clipRegion(source0.cols(), source0.rows());
+        if (searchedWholeFrame) {
+            search(source0, hsvThresholdThresholds, 0, 0);
+        }
+        else {
+            Mat regionMat = source0.submat(searchedRegion);
+            search(regionMat, hsvThresholdThresholds, searchedRegion.x, searchedRegion.y);
+            regionMat.release();
+
+            // A contour cut off by the region would give a different line than the whole frame,
+            // so search the whole frame instead
+            if (reachesInnerEdge(filterContoursOutput, source0.cols(), source0.rows())) {
+                searchedWholeFrame = true;
+                regionRetries++;
+                search(source0, hsvThresholdThresholds, 0, 0);
+            }
+        }
+    }
+
+    /**
+     * Finds and filters the contours in the input, which is at the offset in the frame.
+     */
+    private void search(Mat hsvThresholdInput, HsvThresholds hsvThresholdThresholds, int offsetX, int offsetY) {
+        regionOffset.x = offsetX;
+        regionOffset.y = offsetY;
+        long findContoursEnd;
+        // Regions too small to be worth downscaling are searched directly
+        int minPyramidSize = MIN_PYRAMID_SIZE << pyramidLevels;
+        if (pyramidLevels > 0 && hsvThresholdInput.cols() >= minPyramidSize && hsvThresholdInput.rows() >= minPyramidSize) {
+            findContoursEnd = pyramidContours(hsvThresholdInput, hsvThresholdThresholds, regionOffset, findContoursOutput);
+        }
+        else {
+            // Step HSV_Threshold0:
+            hsvThreshold(hsvThresholdInput, hsvThresholdThresholds, hsvThresholdOutput);
+            long thresholdEnd = System.nanoTime();
+            thresholdNanos = thresholdEnd - processStartNanos;
+
+            // Step Find_Contours0:
+            Mat findContoursInput = hsvThresholdOutput;
+            boolean findContoursExternalOnly = false;
+            findContours(findContoursInput, findContoursExternalOnly, regionOffset, findContoursOutput);
+            findContoursEnd = System.nanoTime();
+            findContoursNanos = findContoursEnd - thresholdEnd;
+        }
 
         // Step Filter_Contours0:
         ArrayList<MatOfPoint> filterContoursContours = findContoursOutput;
-        double filterContoursMinArea = 100.0;
-        double filterContoursMinPerimeter = 0.0;
-        double filterContoursMinWidth = 20.0;
-        double filterContoursMaxWidth = 1000.0;
-        double filterContoursMinHeight = 0.0;
-        double filterContoursMaxHeight = 1000.0;
-        double[] filterContoursSolidity = {0, 100};
-        double filterContoursMaxVertices = 1000000.0;
-        double filterContoursMinVertices = 0.0;
-        double filterContoursMinRatio = 0.0;
-        double filterContoursMaxRatio = 1000.0;
-        filterContours(filterContoursContours,
-                        filterContoursMinArea,
-                        filterContoursMinPerimeter,
-                        filterContoursMinWidth,
-                        filterContoursMaxWidth,
-                        filterContoursMinHeight,
-                        filterContoursMaxHeight,
-                        filterContoursSolidity,
-                        filterContoursMaxVertices,
-                        filterContoursMinVertices,
-                        filterContoursMinRatio,
-                        filterContoursMaxRatio,
-                        filterContoursOutput);
+        filterContours(filterContoursContours, filterContoursOutput);
+        filterContoursNanos = System.nanoTime() - findContoursEnd;
+    }
+
+    /**
+     * Checks if any of the contours reaches an edge of the searched region that isn't also an edge
+     * of the frame.
+     */
+    private boolean reachesInnerEdge(List<MatOfPoint> contours, int cols, int rows) {
+        int x0 = searchedRegion.x;
+        int y0 = searchedRegion.y;
+        int x1 = searchedRegion.x + searchedRegion.width;
+        int y1 = searchedRegion.y + searchedRegion.height;
+        for (int i = 0; i < contours.size(); i++) {
+            Rect box = Imgproc.boundingRect(contours.get(i));
+            if ((x0 > 0 && box.x <= x0) || (y0 > 0 && box.y <= y0)
+                    || (x1 < cols && box.x + box.width >= x1) || (y1 < rows && box.y + box.height >= y1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the contours by thresholding a downscaled copy of the input, then thresholding the input
+     * again only in the patches around the coarse contours that could pass the filter. The contours
+     * found are the same as without the pyramid, as long as the coarse image still shows the line.
+     *
+     * <p>The threshold time covers the downscaled image, and the find contours time covers the
+     * coarse contours and the patches. The threshold output is the downscaled one.
+     *
+     * @return the System.nanoTime() at which the contours were found
+     */
+    private long pyramidContours(Mat input, HsvThresholds thresholds, Point offset, List<MatOfPoint> contours) {
+        int scale = 1 << pyramidLevels;
+        Mat coarse = matPool.acquire();
+        Imgproc.resize(input, coarse, new Size(input.cols() / scale, input.rows() / scale), 0, 0, Imgproc.INTER_AREA);
+        hsvThreshold(coarse, thresholds, hsvThresholdOutput);
+        long thresholdEnd = System.nanoTime();
+        thresholdNanos = thresholdEnd - processStartNanos;
+
+        findContours(hsvThresholdOutput, false, coarseContours);
+
+        // Patches around the coarse contours, skipping those too small even allowing for the downscaling
+        patches.clear();
+        double minArea = contourFilter.getMinArea();
+        double minWidth = contourFilter.getMinWidth();
+        for (int i = 0; i < coarseContours.size(); i++) {
+            Rect box = Imgproc.boundingRect(coarseContours.get(i));
+            double width = (box.width + 2) * scale;
+            double height = (box.height + 2) * scale;
+            if (width < minWidth || width * height < minArea) {
+                continue;
+            }
+            int x0 = Math.max((box.x - 2) * scale, 0);
+            int y0 = Math.max((box.y - 2) * scale, 0);
+            int x1 = Math.min((box.x + box.width + 2) * scale, input.cols());
+            int y1 = Math.min((box.y + box.height + 2) * scale, input.rows());
+            addPatch(new Rect(x0, y0, x1 - x0, y1 - y0));
+        }
+
+        // Find the full resolution contours in each patch
+        releaseContours(contours);
+        // The input is never bigger than the frame, so these keep their size from frame to frame
+        patchHsv.create(frameHeight, frameWidth, CvType.CV_8UC3);
+        patchMask.create(frameHeight, frameWidth, CvType.CV_8UC1);
+        for (int i = 0; i < patches.size(); i++) {
+            Rect patch = patches.get(i);
+            Mat patchMat = input.submat(patch);
+            Mat hsvMat = patchHsv.submat(patch);
+            Mat maskMat = patchMask.submat(patch);
+            hsvThreshold(patchMat, thresholds, hsvMat, maskMat);
+            patchMat.release();
+            hsvMat.release();
+            patchOffset.x = offset.x + patch.x;
+            patchOffset.y = offset.y + patch.y;
+            findContours(maskMat, false, patchOffset, patchContours);
+            maskMat.release();
+            // The contours now belong to the output
+            contours.addAll(patchContours);
+            patchContours.clear();
+        }
+
+        long findContoursEnd = System.nanoTime();
+        findContoursNanos = findContoursEnd - thresholdEnd;
+        return findContoursEnd;
+    }
+
+    /**
+     * Adds a patch, merging it with any it overlaps so no contour is found twice.
+     */
+    private void addPatch(Rect patch) {
+        for (int i = 0; i < patches.size(); i++) {
+            Rect other = patches.get(i);
+            if (patch.x < other.x + other.width && other.x < patch.x + patch.width
+                    && patch.y < other.y + other.height && other.y < patch.y + patch.height) {
+                patches.remove(i);
+                int x0 = Math.min(patch.x, other.x);
+                int y0 = Math.min(patch.y, other.y);
+                int x1 = Math.max(patch.x + patch.width, other.x + other.width);
+                int y1 = Math.max(patch.y + patch.height, other.y + other.height);
+                // The merged patch may now overlap others
+                addPatch(new Rect(x0, y0, x1 - x0, y1 - y0));
+                return;
+            }
+        }
+        patches.add(patch);
+    }
+
+    /**
+     * Sets how many times the frame is halved to find the contours before they are found again at
+     * full resolution in the patches around them. 0 turns pyramid mode off.
+     */
+    public void setPyramidLevels(int levels) {
+        this.pyramidLevels = levels;
+    }
+
+    public int getPyramidLevels() {
+        return pyramidLevels;
+    }
+
+    /**
+     * Clips the region to the frame into searchedRegion.
+     * @return true if only part of the frame needs to be searched
+     */
+    private boolean clipRegion(int cols, int rows) {
+        if (region == null) {
+            return false;
+        }
+        int x0 = Math.max(region.x, 0);
+        int y0 = Math.max(region.y, 0);
+        int x1 = Math.min(region.x + region.width, cols);
+        int y1 = Math.min(region.y + region.height, rows);
+        if (x1 <= x0 || y1 <= y0 || (x0 == 0 && y0 == 0 && x1 == cols && y1 == rows)) {
+            return false;
+        }
+        searchedRegion.x = x0;
+        searchedRegion.y = y0;
+        searchedRegion.width = x1 - x0;
+        searchedRegion.height = y1 - y0;
+        return true;
+    }
+
+    /**
+     * Sets the region of the next frames to search, or null to search the whole frame.
+     * The region is clipped to the frame. Contours are always in whole frame coordinates. If a
+     * contour found in the region reaches one of its edges inside the frame, the line may go on
+     * past it, so the frame is searched again whole.
+     */
+    public void setRegion(Rect region) {
+        this.region = region;
+    }
+
+    /**
+     * Gets the part of the last frame that was searched, or null if it was the whole frame.
+     */
+    public Rect getSearchedRegion() {
+        return searchedWholeFrame ? null : searchedRegion;
+    }
+
+    /**
+     * Gets the number of frames searched again whole because a contour reached the region's edge.
+     */
+    public long getRegionRetries() {
+        return regionRetries;
+    }
+
+    /**
+     * Sets the detector used to skip frames that are unchanged from the last one processed, or null
+     * to process every frame. A frame is always processed when the HSV thresholds change.
+     */
+    public void setChangeDetector(FrameChangeDetector changeDetector) {
+        this.changeDetector = changeDetector;
+    }
+
+    /**
+     * Checks if the last frame was skipped as unchanged, leaving the outputs of the frame before.
+     */
+    public boolean isUnchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Gets the width of the last frame.
+     */
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    /**
+     * Gets the height of the last frame.
+     */
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    /**
+     * Gets the System.nanoTime() at which the last frame started processing.
+     */
+    public long getProcessStartNanos() {
+        return processStartNanos;
+    }
+
+    /**
+     * Gets how long the HSV_Threshold step took on the last frame, in nanoseconds.
+     */
+    public long getThresholdNanos() {
+        return thresholdNanos;
+    }
+
+    /**
+     * Gets how long the Find_Contours step took on the last frame, in nanoseconds.
+     */
+    public long getFindContoursNanos() {
+        return findContoursNanos;
+    }
+
+    /**
+     * Gets how long the Filter_Contours step took on the last frame, in nanoseconds.
+     */
+    public long getFilterContoursNanos() {
+        return filterContoursNanos;
+    }
+
+    /**
+     * Sets how the HSV threshold step is run.
+     * @param engine the threshold engine
+     * @param bits the bits per color channel for the lookup engine, 8 matches OpenCV exactly
+     */
+    public void setThresholdEngine(ThresholdEngine engine, int bits) {
+        this.thresholdEngine = engine;
+        this.lookupBits = bits;
+    }
+
+    public ThresholdEngine getThresholdEngine() {
+        return thresholdEngine;
+    }
+
+    /**
+     * Gets the filter used by the Filter_Contours step, so its settings can be changed.
+     */
+    public ContourFilter getContourFilter() {
+        return contourFilter;
+    }
+
+    /**
+     * Gets the pool of Mats reused by this pipeline. Mats acquired from it are good until the next frame.
+     */
+    public MatPool getMatPool() {
+        return matPool;
+    }
+
+    /**
+     * Gets the bytes of native image data held by this pipeline.
+     */
+    public long nativeBytes() {
+        long bytes = matPool.nativeBytes() + MatPool.nativeBytes(hsvThresholdOutput) + MatPool.nativeBytes(hsv)
+            + MatPool.nativeBytes(patchHsv) + MatPool.nativeBytes(patchMask);
+        for (int i = 0; i < findContoursOutput.size(); i++) {
+            bytes += MatPool.nativeBytes(findContoursOutput.get(i));
+        }
+        for (int i = 0; i < coarseContours.size(); i++) {
+            bytes += MatPool.nativeBytes(coarseContours.get(i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Frees the native memory held by this pipeline. It can still be used afterwards.
+     */
+    public void release() {
+        releaseContours(findContoursOutput);
+        releaseContours(coarseContours);
+        filterContoursOutput.clear();
+        hsvThresholdOutput.release();
+        hsv.release();
+        patchHsv.release();
+        patchMask.release();
+        matPool.release();
+        if (changeDetector != null) {
+            changeDetector.release();
+        }
     }
 
     /**
@@ -105,30 +466,59 @@ public class LinePipeline implements VisionPipeline {
     }
 
     /**
-     * Segment an image based on hue, saturation, and value ranges.
+     * Segment an image based on hue, saturation, and value ranges, converting it to HSV in the
+     * pipeline's own HSV image.
      *
      * @param input The image on which to perform the HSL threshold.
-     * @param hue The min and max hue
-     * @param sat The min and max saturation
-     * @param val The min and max value
+     * @param thresholds The min and max hue, saturation and value
      * @param output The image in which to store the output.
      */
-    private void hsvThreshold(Mat input, double[] hue, double[] sat, double[] val, Mat out) {
-        Imgproc.cvtColor(input, out, Imgproc.COLOR_BGR2HSV);
-        Core.inRange(out, new Scalar(hue[0], sat[0], val[0]),
-            new Scalar(hue[1], sat[1], val[1]), out);
+    void hsvThreshold(Mat input, HsvThresholds thresholds, Mat out) {
+        hsvThreshold(input, thresholds, hsv, out);
     }
 
     /**
-     * Sets the values of pixels in a binary image to their distance to the nearest black pixel.
-     * @param input The image on which to perform the Distance Transform.
-     * @param type The Transform.
-     * @param maskSize the size of the mask.
+     * Segment an image based on hue, saturation, and value ranges.
+     *
+     * @param input The image on which to perform the HSL threshold.
+     * @param thresholds The min and max hue, saturation and value
+     * @param hsv The image in which to store the input converted to HSV, unused by the lookup engine.
      * @param output The image in which to store the output.
      */
-    private void findContours(Mat input, boolean externalOnly, List<MatOfPoint> contours) {
-        Mat hierarchy = new Mat();
-        contours.clear();
+    void hsvThreshold(Mat input, HsvThresholds thresholds, Mat hsv, Mat out) {
+        if (thresholdEngine == ThresholdEngine.LOOKUP) {
+            LookupThreshold.forThresholds(thresholds, lookupBits).apply(input, out, lookupBuffers);
+            return;
+        }
+        Imgproc.cvtColor(input, hsv, Imgproc.COLOR_BGR2HSV);
+        Core.inRange(hsv, thresholds.lower, thresholds.upper, out);
+    }
+
+    /**
+     * Finds the contours in a binary image.
+     *
+     * <p>The contours already in the list are released first, so callers must copy any contour they
+     * want to keep past the next frame.
+     *
+     * @param input The binary image.
+     * @param externalOnly Only find the outermost contours.
+     * @param contours The list in which to store the contours.
+     */
+    void findContours(Mat input, boolean externalOnly, List<MatOfPoint> contours) {
+        findContours(input, externalOnly, new Point(), contours);
+    }
+
+    /**
+     * Finds the contours in a binary image cut from a larger one.
+     *
+     * @param input The binary image.
+     * @param externalOnly Only find the outermost contours.
+     * @param offset The position of the image in the larger one, added to every contour point.
+     * @param contours The list in which to store the contours.
+     */
+    void findContours(Mat input, boolean externalOnly, Point offset, List<MatOfPoint> contours) {
+        Mat hierarchy = matPool.acquire();
+        releaseContours(contours);
         int mode;
         if (externalOnly) {
             mode = Imgproc.RETR_EXTERNAL;
@@ -137,65 +527,27 @@ public class LinePipeline implements VisionPipeline {
             mode = Imgproc.RETR_LIST;
         }
         int method = Imgproc.CHAIN_APPROX_SIMPLE;
-        Imgproc.findContours(input, contours, hierarchy, mode, method);
+        Imgproc.findContours(input, contours, hierarchy, mode, method, offset);
+    }
+
+    /**
+     * Frees the native memory of the contours and clears the list.
+     */
+    private static void releaseContours(List<MatOfPoint> contours) {
+        for (int i = 0; i < contours.size(); i++) {
+            contours.get(i).release();
+        }
+        contours.clear();
     }
 
 
     /**
-     * Filters out contours that do not meet certain criteria.
+     * Filters out contours that do not meet the criteria of the pipeline's ContourFilter.
      * @param inputContours is the input list of contours
      * @param output is the the output list of contours
-     * @param minArea is the minimum area of a contour that will be kept
-     * @param minPerimeter is the minimum perimeter of a contour that will be kept
-     * @param minWidth minimum width of a contour
-     * @param maxWidth maximum width
-     * @param minHeight minimum height
-     * @param maxHeight maximimum height
-     * @param Solidity the minimum and maximum solidity of a contour
-     * @param minVertexCount minimum vertex Count of the contours
-     * @param maxVertexCount maximum vertex Count
-     * @param minRatio minimum ratio of width to height
-     * @param maxRatio maximum ratio of width to height
-     */
-    private void filterContours(List<MatOfPoint> inputContours,
-                                double minArea,
-                                double minPerimeter,
-                                double minWidth,
-                                double maxWidth,
-                                double minHeight,
-                                double maxHeight,
-                                double[] solidity,
-                                double maxVertexCount,
-                                double minVertexCount,
-                                double minRatio,
-                                double maxRatio,
-                                List<MatOfPoint> output) {
-        final MatOfInt hull = new MatOfInt();
-        output.clear();
-        //operation
-        for (int i = 0; i < inputContours.size(); i++) {
-            final MatOfPoint contour = inputContours.get(i);
-            final Rect bb = Imgproc.boundingRect(contour);
-            if (bb.width < minWidth || bb.width > maxWidth) continue;
-            if (bb.height < minHeight || bb.height > maxHeight) continue;
-            final double area = Imgproc.contourArea(contour);
-            if (area < minArea) continue;
-            if (Imgproc.arcLength(new MatOfPoint2f(contour.toArray()), true) < minPerimeter) continue;
-            Imgproc.convexHull(contour, hull);
-            MatOfPoint mopHull = new MatOfPoint();
-            mopHull.create((int) hull.size().height, 1, CvType.CV_32SC2);
-            for (int j = 0; j < hull.size().height; j++) {
-                int index = (int)hull.get(j, 0)[0];
-                double[] point = new double[] { contour.get(index, 0)[0], contour.get(index, 0)[1]};
-                mopHull.put(j, 0, point);
-            }
-            final double solid = 100 * area / Imgproc.contourArea(mopHull);
-            if (solid < solidity[0] || solid > solidity[1]) continue;
-            if (contour.rows() < minVertexCount || contour.rows() > maxVertexCount)    continue;
-            final double ratio = bb.width / (double)bb.height;
-            if (ratio < minRatio || ratio > maxRatio) continue;
-            output.add(contour);
-        }
+     */
+    void filterContours(List<MatOfPoint> inputContours, List<MatOfPoint> output) {
+        contourFilter.filter(inputContours, output);
     }
 
 }
\ No newline at end of file
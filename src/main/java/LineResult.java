@@ -0,0 +1,79 @@
+/**
+ * The result of line detection on one frame, published as a single NetworkTables entry so a
+ * reader never sees values from two different frames.
+ *
+ * <p>The entry is a double array laid out as
+ * {@code [sequence, timestamp, contours, area, angle, centerX, centerY]}. The timestamp is the
+ * frame capture time in microseconds on the Pi's NetworkTables clock. An area of 0 means no line
+ * was found in that frame. One instance is reused for every frame of a camera.
+ */
+public class LineResult {
+
+    public static final int SEQUENCE = 0;
+    public static final int TIMESTAMP = 1;
+    public static final int CONTOURS = 2;
+    public static final int AREA = 3;
+    public static final int ANGLE = 4;
+    public static final int CENTER_X = 5;
+    public static final int CENTER_Y = 6;
+    public static final int SIZE = 7;
+
+    public long sequence;
+    public long timestamp;
+    public int contours;
+    public boolean found;
+    public double area;
+    public double angle;
+    public double centerX;
+    public double centerY;
+
+    private final double[] array = new double[SIZE];
+
+    /**
+     * Starts the result for a new frame.
+     */
+    public void reset(long timestamp, int contours) {
+        this.sequence++;
+        this.timestamp = timestamp;
+        this.contours = contours;
+        this.found = false;
+        this.area = 0;
+        this.angle = 0;
+        this.centerX = 0;
+        this.centerY = 0;
+    }
+
+    /**
+     * Carries the result of the last frame over to a new frame that is unchanged from it.
+     */
+    public void restamp(long timestamp) {
+        this.sequence++;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Records the line found in the frame.
+     */
+    public void setLine(double area, double angle, double centerX, double centerY) {
+        this.found = true;
+        this.area = area;
+        this.angle = angle;
+        this.centerX = centerX;
+        this.centerY = centerY;
+    }
+
+    /**
+     * Gets the result as the array that is published. The same array is reused every call.
+     */
+    public double[] toArray() {
+        array[SEQUENCE] = sequence;
+        array[TIMESTAMP] = timestamp;
+        array[CONTOURS] = contours;
+        array[AREA] = area;
+        array[ANGLE] = angle;
+        array[CENTER_X] = centerX;
+        array[CENTER_Y] = centerY;
+        return array;
+    }
+
+}
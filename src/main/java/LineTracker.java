@@ -0,0 +1,189 @@
+/**
+ * An alpha-beta filter over the line's center and angle, fed one camera's results.
+ *
+ * <p>Each result first moves the estimate ahead by its velocity to the frame's capture time. A
+ * frame with a line then pulls the estimate towards it by alpha and the velocity by beta. A frame
+ * without one leaves the prediction standing, so the estimate coasts through short dropouts, until
+ * the line has been gone longer than the coast time. The confidence rises towards 1 with every
+ * hit and falls with every miss. The angle is the line's axis from -90 to 90 degrees, as Vision
+ * publishes it, so it wraps around every 180 degrees.
+ *
+ * <p>The published array is
+ * {@code [timestamp, valid, centerX, centerY, angle, velocityX, velocityY, angularVelocity, confidence]}
+ * with velocities per second. One instance is reused for every frame of a camera.
+ */
+public class LineTracker {
+
+    public static final int TIMESTAMP = 0;
+    public static final int VALID = 1;
+    public static final int CENTER_X = 2;
+    public static final int CENTER_Y = 3;
+    public static final int ANGLE = 4;
+    public static final int VELOCITY_X = 5;
+    public static final int VELOCITY_Y = 6;
+    public static final int ANGULAR_VELOCITY = 7;
+    public static final int CONFIDENCE = 8;
+    public static final int SIZE = 9;
+
+    // How much of the way to 1 the confidence goes on a hit, and what it is multiplied by on a miss
+    private static final double CONFIDENCE_GAIN = 0.3;
+    private static final double CONFIDENCE_DECAY = 0.7;
+    // The angle is an axis, so one half turn apart is the same line
+    private static final double ANGLE_PERIOD = 180;
+
+    private final double alpha;
+    private final double beta;
+    private final long coastMicros;
+
+    private boolean valid;
+    private long timestamp;
+    private long lastHit;
+    private double centerX;
+    private double centerY;
+    private double angle;
+    private double velocityX;
+    private double velocityY;
+    private double angularVelocity;
+    private double confidence;
+
+    private final double[] array = new double[SIZE];
+
+    /**
+     * @param alpha how far the estimate moves towards a measurement, 0 to 1
+     * @param beta how far the velocity moves towards the one the measurement implies, 0 to 1
+     * @param coastMillis how long the estimate is kept without a line
+     */
+    public LineTracker(double alpha, double beta, double coastMillis) {
+        this.alpha = alpha;
+        this.beta = beta;
+        this.coastMicros = (long) (coastMillis * 1000);
+    }
+
+    /**
+     * Updates the estimate with the line found in a frame.
+     * @param timestamp the capture time of the frame in microseconds
+     */
+    public void hit(long timestamp, double centerX, double centerY, double angle) {
+        if (!valid) {
+            this.centerX = centerX;
+            this.centerY = centerY;
+            this.angle = angle;
+            velocityX = 0;
+            velocityY = 0;
+            angularVelocity = 0;
+            confidence = CONFIDENCE_GAIN;
+            valid = true;
+        }
+        else {
+            double dt = predict(timestamp);
+            double residualX = centerX - this.centerX;
+            double residualY = centerY - this.centerY;
+            // The angle wraps around every half turn, so take the short way
+            double residualAngle = Math.IEEEremainder(angle - this.angle, ANGLE_PERIOD);
+            this.centerX += alpha * residualX;
+            this.centerY += alpha * residualY;
+            this.angle = wrapAngle(this.angle + alpha * residualAngle);
+            if (dt > 0) {
+                velocityX += beta * residualX / dt;
+                velocityY += beta * residualY / dt;
+                angularVelocity += beta * residualAngle / dt;
+            }
+            confidence += (1 - confidence) * CONFIDENCE_GAIN;
+        }
+        this.timestamp = timestamp;
+        this.lastHit = timestamp;
+    }
+
+    /**
+     * Updates the estimate for a frame in which no line was found.
+     * @param timestamp the capture time of the frame in microseconds
+     */
+    public void miss(long timestamp) {
+        if (!valid) {
+            this.timestamp = timestamp;
+            return;
+        }
+        if (timestamp - lastHit > coastMicros) {
+            reset();
+            this.timestamp = timestamp;
+            return;
+        }
+        predict(timestamp);
+        this.timestamp = timestamp;
+        confidence *= CONFIDENCE_DECAY;
+    }
+
+    /**
+     * Moves the estimate ahead by its velocity to the time.
+     * @return the seconds moved ahead
+     */
+    private double predict(long timestamp) {
+        double dt = (timestamp - this.timestamp) / 1e6;
+        if (dt <= 0) {
+            return 0;
+        }
+        centerX += velocityX * dt;
+        centerY += velocityY * dt;
+        angle = wrapAngle(angle + angularVelocity * dt);
+        return dt;
+    }
+
+    /**
+     * Wraps an angle into [-90, 90), the range Vision publishes.
+     */
+    private static double wrapAngle(double angle) {
+        double wrapped = Math.IEEEremainder(angle, ANGLE_PERIOD);
+        return wrapped >= ANGLE_PERIOD / 2 ? wrapped - ANGLE_PERIOD : wrapped;
+    }
+
+    /**
+     * Forgets the line.
+     */
+    public void reset() {
+        valid = false;
+        centerX = 0;
+        centerY = 0;
+        angle = 0;
+        velocityX = 0;
+        velocityY = 0;
+        angularVelocity = 0;
+        confidence = 0;
+    }
+
+    public boolean isValid() {
+        return valid;
+    }
+
+    public double getCenterX() {
+        return centerX;
+    }
+
+    public double getCenterY() {
+        return centerY;
+    }
+
+    public double getAngle() {
+        return angle;
+    }
+
+    public double getConfidence() {
+        return confidence;
+    }
+
+    /**
+     * Gets the estimate as the array that is published. The same array is reused every call.
+     */
+    public double[] toArray() {
+        array[TIMESTAMP] = timestamp;
+        array[VALID] = valid ? 1 : 0;
+        array[CENTER_X] = centerX;
+        array[CENTER_Y] = centerY;
+        array[ANGLE] = angle;
+        array[VELOCITY_X] = velocityX;
+        array[VELOCITY_Y] = velocityY;
+        array[ANGULAR_VELOCITY] = angularVelocity;
+        array[CONFIDENCE] = confidence;
+        return array;
+    }
+
+}
@@ -0,0 +1,224 @@
+import org.opencv.core.*;
+
+
+/**
+ * An HSV threshold that works directly on BGR pixels using a precomputed lookup table.
+ *
+ * <p>The table holds one bit per (quantized) BGR color, set if that color passes the HSV thresholds.
+ * It is only rebuilt when the thresholds change, so thresholding a frame is a single pass over the
+ * pixels with no HSV image in between.
+ *
+ * <p>With 8 bits per channel the output matches Imgproc.cvtColor(COLOR_BGR2HSV) followed by
+ * Core.inRange pixel for pixel. Fewer bits make the table smaller (6 bits is 32 KB instead of 2 MB)
+ * at the cost of colors near the threshold edges.
+ */
+public class LookupThreshold {
+
+    // Same fixed point math as OpenCV's 8-bit BGR to HSV conversion
+    private static final int HSV_SHIFT = 12;
+    private static final int HSV_ROUND = 1 << (HSV_SHIFT - 1);
+    private static final int[] SDIV_TABLE = new int[256];
+    private static final int[] HDIV_TABLE = new int[256];
+
+    static {
+        for (int i = 1; i < 256; i++) {
+            SDIV_TABLE[i] = (int) Math.rint((255 << HSV_SHIFT) / (1. * i));
+            HDIV_TABLE[i] = (int) Math.rint((180 << HSV_SHIFT) / (6. * i));
+        }
+    }
+
+    // The last table built, shared by every pipeline using the same bits per channel
+    private static volatile LookupThreshold shared;
+
+    private final HsvThresholds thresholds;
+    private final int bits;
+    private final int shift;
+    private final long[] table;
+
+    /**
+     * Pixel buffers reused from frame to frame, one set per pipeline.
+     */
+    public static class Buffers {
+        private byte[] bgr = new byte[0];
+        private byte[] mask = new byte[0];
+    }
+
+    /**
+     * Builds the lookup table for the given thresholds.
+     *
+     * @param thresholds The HSV thresholds
+     * @param bits The number of bits kept from each color channel, from 1 to 8
+     */
+    public LookupThreshold(HsvThresholds thresholds, int bits) {
+        if (bits < 1 || bits > 8) {
+            throw new IllegalArgumentException("bits must be between 1 and 8: " + bits);
+        }
+        this.thresholds = thresholds;
+        this.bits = bits;
+        this.shift = 8 - bits;
+        this.table = new long[Math.max(1, (1 << (3 * bits)) >> 6)];
+
+        int hueMin = toByte(thresholds.hueMin);
+        int hueMax = toByte(thresholds.hueMax);
+        int satMin = toByte(thresholds.saturationMin);
+        int satMax = toByte(thresholds.saturationMax);
+        int valMin = toByte(thresholds.valueMin);
+        int valMax = toByte(thresholds.valueMax);
+
+        // Each quantized color is tested at the center of its cell
+        int levels = 1 << bits;
+        int half = (1 << shift) >> 1;
+        int[] hsv = new int[3];
+        for (int b = 0; b < levels; b++) {
+            for (int g = 0; g < levels; g++) {
+                for (int r = 0; r < levels; r++) {
+                    toHsv((b << shift) + half, (g << shift) + half, (r << shift) + half, hsv);
+                    if (hsv[0] >= hueMin && hsv[0] <= hueMax
+                        && hsv[1] >= satMin && hsv[1] <= satMax
+                        && hsv[2] >= valMin && hsv[2] <= valMax) {
+                        int index = (b << (2 * bits)) | (g << bits) | r;
+                        table[index >>> 6] |= 1L << index;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets a table for the given thresholds.
+     *
+     * <p>The first table is built right away. After that, a change to the thresholds is built on a
+     * background thread and the previous table is returned until it is ready, so dragging a
+     * threshold slider does not stall the vision threads.
+     */
+    public static LookupThreshold forThresholds(HsvThresholds thresholds, int bits) {
+        LookupThreshold current = shared;
+        if (current != null && current.thresholds == thresholds && current.bits == bits) {
+            return current;
+        }
+        if (current != null && current.bits == bits) {
+            buildInBackground(thresholds, bits);
+            return current;
+        }
+        synchronized (LookupThreshold.class) {
+            current = shared;
+            if (current == null || current.thresholds != thresholds || current.bits != bits) {
+                current = new LookupThreshold(thresholds, bits);
+                shared = current;
+            }
+            return current;
+        }
+    }
+
+    // Background build state, guarded by the class lock
+    private static HsvThresholds pendingThresholds;
+    private static HsvThresholds buildingThresholds;
+    private static int pendingBits;
+    private static boolean builderRunning;
+
+    /**
+     * Queues a table to be built, replacing any table still waiting to be built.
+     */
+    private static synchronized void buildInBackground(HsvThresholds thresholds, int bits) {
+        if (pendingThresholds == thresholds || (pendingThresholds == null && buildingThresholds == thresholds)) {
+            return;
+        }
+        pendingThresholds = thresholds;
+        pendingBits = bits;
+        if (builderRunning) {
+            return;
+        }
+        builderRunning = true;
+        Thread builder = new Thread(() -> {
+            for (;;) {
+                HsvThresholds nextThresholds;
+                int nextBits;
+                synchronized (LookupThreshold.class) {
+                    if (pendingThresholds == null) {
+                        buildingThresholds = null;
+                        builderRunning = false;
+                        return;
+                    }
+                    nextThresholds = pendingThresholds;
+                    nextBits = pendingBits;
+                    pendingThresholds = null;
+                    buildingThresholds = nextThresholds;
+                }
+                shared = new LookupThreshold(nextThresholds, nextBits);
+            }
+        }, "LookupThreshold builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    public HsvThresholds getThresholds() {
+        return thresholds;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Thresholds a BGR image into a binary mask (0 or 255 per pixel).
+     *
+     * @param input The 8-bit, 3 channel BGR image.
+     * @param out The image in which to store the output.
+     * @param buffers The caller's pixel buffers, grown as needed.
+     */
+    public void apply(Mat input, Mat out, Buffers buffers) {
+        int rows = input.rows();
+        int cols = input.cols();
+        int pixels = rows * cols;
+        if (buffers.mask.length < pixels) {
+            buffers.bgr = new byte[pixels * 3];
+            buffers.mask = new byte[pixels];
+        }
+        byte[] bgr = buffers.bgr;
+        byte[] mask = buffers.mask;
+        input.get(0, 0, bgr);
+
+        long[] table = this.table;
+        int shift = this.shift;
+        int gShift = bits;
+        int bShift = 2 * bits;
+        for (int i = 0, j = 0; i < pixels; i++, j += 3) {
+            int b = (bgr[j] & 0xFF) >>> shift;
+            int g = (bgr[j + 1] & 0xFF) >>> shift;
+            int r = (bgr[j + 2] & 0xFF) >>> shift;
+            int index = (b << bShift) | (g << gShift) | r;
+            mask[i] = (byte) -(int) ((table[index >>> 6] >>> index) & 1L);
+        }
+
+        out.create(rows, cols, CvType.CV_8UC1);
+        out.put(0, 0, mask, 0, pixels);
+    }
+
+    /**
+     * Converts one BGR color to OpenCV's 8-bit HSV (hue from 0 to 180).
+     */
+    static void toHsv(int b, int g, int r, int[] hsv) {
+        int v = Math.max(b, Math.max(g, r));
+        int vmin = Math.min(b, Math.min(g, r));
+        int diff = v - vmin;
+        int vr = v == r ? -1 : 0;
+        int vg = v == g ? -1 : 0;
+
+        int s = (diff * SDIV_TABLE[v] + HSV_ROUND) >> HSV_SHIFT;
+        int h = (vr & (g - b)) + (~vr & ((vg & (b - r + 2 * diff)) + ((~vg) & (r - g + 4 * diff))));
+        h = (h * HDIV_TABLE[diff] + HSV_ROUND) >> HSV_SHIFT;
+        h += h < 0 ? 180 : 0;
+
+        hsv[0] = h;
+        hsv[1] = s;
+        hsv[2] = v;
+    }
+
+    /**
+     * Rounds a threshold the same way Core.inRange does for 8-bit images.
+     */
+    private static int toByte(double value) {
+        return (int) Math.max(-1, Math.min(256, Math.rint(value)));
+    }
+
+}
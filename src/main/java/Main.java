@@ -1,9 +1,15 @@
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
@@ -15,6 +21,7 @@ import com.google.gson.JsonParser;
 import com.pi4j.io.gpio.Pin;
 import com.pi4j.io.gpio.RaspiPin;
 
+import edu.wpi.cscore.CameraServerJNI;
 import edu.wpi.cscore.MjpegServer;
 import edu.wpi.cscore.UsbCamera;
 import edu.wpi.cscore.VideoSource;
@@ -47,6 +54,11 @@ JSON format:
                 }
             ],
             "stream": {                                                 // optional
+                "on demand": <false to keep the camera open with nobody using it> // optional
+                "max fps": <fps cap of the stream, none if unspecified>  // optional
+                "width": <stream width, the camera's if unspecified>    // optional
+                "height": <stream height, the camera's if unspecified>  // optional
+                "compression": <JPEG quality 0-100, the camera's if unspecified> // optional
                 "properties": [
                     {
                         "name": <stream property name>
@@ -54,6 +66,11 @@ JSON format:
                     }
                 ]
             }
+            "vision": {                                                 // optional
+                "priority": <higher is processed first, 0 if unspecified>  // optional
+                "max fps": <frames processed per second, 0 for no cap>  // optional
+                "deadline ms": <drop frames older than this, 0 for none> // optional
+            }
         }
     ]
     "switched cameras": [
@@ -62,33 +79,123 @@ JSON format:
            "key": <network table key used for selection>
            // if NT value is a string, it's treated as a name
            // if NT value is a double, it's treated as an integer index
+           "max mbps": <bandwidth budget the stream is kept under, none if unspecified> // optional
        }
    ]
+    "distance sensors": [                                               // optional
+        {
+            "name": <sensor name>
+            "echo pin": <PI4J pin number of the echo, e.g. 5 for pin 20>
+            "trig pin": <PI4J pin number of the trigger, e.g. 4 for pin 18>
+            "mode": <"edge" or "poll", "poll" if unspecified>           // optional
+            "period ms": <time between readings, at least 60>           // optional
+            "median window": <readings the median is taken over, 5 if unspecified> // optional
+            "max age ms": <how old a reading can be and still be valid> // optional
+            "max range cm": <furthest anything in front of it reflects from, 400 if unspecified> // optional
+            "simulated distance": <cm, to simulate the sensor instead of using the pins> // optional
+        }
+    ]
+    "vision": {                                                         // optional
+        "threshold engine": <"opencv" or "lookup">                      // optional
+        "lookup bits": <bits per color channel for "lookup", 1-8>       // optional
+        "latency test": <true to print capture to publish latency>      // optional
+        "legacy entries": <true to also publish one entry per value>    // optional
+        "flush period ms": <minimum time between NetworkTables flushes> // optional
+        "workers": <threads shared by all the cameras, 2 if unspecified> // optional
+        "roi": <true to only search around the last line found>         // optional
+        "roi margin": <fraction of the line's size to search around it> // optional
+        "roi misses": <frames without a line before searching it all>  // optional
+        "pyramid levels": <times to halve the frame for the coarse search, 0-3> // optional
+        "change threshold": <mean pixel difference below which a frame is skipped, 0 for off> // optional
+        "change max skips": <most unchanged frames skipped in a row>    // optional
+        "geometry engine": <"java" or "opencv" for the line's rectangle> // optional
+        "candidates": <number of best scoring contours to publish, 3 if unspecified> // optional
+        "track alpha": <0-1, how far the tracked line moves towards each result> // optional
+        "track beta": <0-1, how far the tracked velocity moves towards each result> // optional
+        "track coast ms": <how long the tracked line outlasts the line> // optional
+        "record seconds": <seconds of frames the black box keeps, 0 for off> // optional
+        "record dir": <directory the black box saves to>               // optional
+        "record files": <saved files kept, the oldest deleted first, 12 if unspecified> // optional
+        "log dir": <directory the results are logged to, "" for none>  // optional
+        "log max kb": <size a log file is rolled over at, 1024 if unspecified> // optional
+        "log files": <log files kept, 4 if unspecified>                 // optional
+        "log line rate": <frames with the line logged per second per camera, 2 if unspecified> // optional
+    }
 }
 */
 
 public final class Main {
     private static String configFile = "/boot/frc.json";
 
+    // How often the line being found or lost is logged, so a flickering line can't flood the log
+    private static final double LOG_CHANGE_RATE = 5;
+    private static final int LOG_CHANGE_BURST = 10;
+
     @SuppressWarnings("MemberName")
     public static class CameraConfig {
         public String name;
         public String path;
         public JsonObject config;
         public JsonElement streamConfig;
+        public VisionScheduler.Settings schedule = new VisionScheduler.Settings();
+        public StreamPolicy.Settings stream = new StreamPolicy.Settings();
     }
 
     @SuppressWarnings("MemberName")
     public static class SwitchedCameraConfig {
         public String name;
         public String key;
+        public double maxMbps = 0;
     };
 
+    @SuppressWarnings("MemberName")
+    public static class DistanceSensorConfig {
+        public String name;
+        public Pin echoPin;
+        public Pin trigPin;
+        public DistanceMonitor.Mode mode = DistanceMonitor.Mode.POLL;
+        public double periodMillis = 60;
+        public int medianWindow = 5;
+        public double maxAgeMillis = 250;
+        public double maxRangeCm = 400;
+        public double simulatedDistance = -1;
+    }
+
+    @SuppressWarnings("MemberName")
+    public static class VisionConfig {
+        public LinePipeline.ThresholdEngine thresholdEngine = LinePipeline.ThresholdEngine.OPENCV;
+        public int lookupBits = 8;
+        public boolean latencyTest = false;
+        public boolean legacyEntries = false;
+        public int workers = 2;
+        public boolean regionTracking = false;
+        public double regionMargin = 0.5;
+        public int regionMisses = 3;
+        public int pyramidLevels = 0;
+        public double changeThreshold = 0;
+        public int changeMaxSkips = 15;
+        public int candidates = 3;
+        public Vision.GeometryEngine geometryEngine = Vision.GeometryEngine.JAVA;
+        public double trackAlpha = 0.5;
+        public double trackBeta = 0.1;
+        public double trackCoastMillis = 300;
+        public double recordSeconds = 0;
+        public String recordDir = "/home/pi/blackbox";
+        public int recordFiles = 12;
+        public String logDir = "/home/pi/logs";
+        public int logMaxKb = 1024;
+        public int logFiles = 4;
+        public double logLineRate = 2;
+    }
+
     public static int team;
     public static boolean server;
     public static List<CameraConfig> cameraConfigs = new ArrayList<>();
     public static List<SwitchedCameraConfig> switchedCameraConfigs = new ArrayList<>();
+    public static List<DistanceSensorConfig> distanceSensorConfigs = new ArrayList<>();
+    public static VisionConfig visionConfig = new VisionConfig();
     public static List<VideoSource> cameras = new ArrayList<>();
+    public static List<StreamPolicy> streamPolicies = new ArrayList<>();
 
     private Main() {
     }
@@ -124,6 +231,46 @@ public final class Main {
 
         // stream properties
         cam.streamConfig = config.get("stream");
+        if (cam.streamConfig != null) {
+            JsonObject stream = cam.streamConfig.getAsJsonObject();
+            if (stream.has("on demand")) {
+                cam.stream.onDemand = stream.get("on demand").getAsBoolean();
+            }
+            if (stream.has("max fps")) {
+                cam.stream.maxFps = stream.get("max fps").getAsInt();
+            }
+            if (stream.has("width") != stream.has("height")) {
+                parseError("camera '" + cam.name + "': stream width and height must be set together");
+                return false;
+            }
+            if (stream.has("width")) {
+                cam.stream.width = stream.get("width").getAsInt();
+                cam.stream.height = stream.get("height").getAsInt();
+            }
+            if (stream.has("compression")) {
+                int compression = stream.get("compression").getAsInt();
+                if (compression < 0 || compression > 100) {
+                    parseError("camera '" + cam.name + "': stream compression must be between 0 and 100");
+                    return false;
+                }
+                cam.stream.compression = compression;
+            }
+        }
+
+        // vision scheduling
+        JsonElement visionElement = config.get("vision");
+        if (visionElement != null) {
+            JsonObject vision = visionElement.getAsJsonObject();
+            if (vision.has("priority")) {
+                cam.schedule.priority = vision.get("priority").getAsInt();
+            }
+            if (vision.has("max fps")) {
+                cam.schedule.maxFps = vision.get("max fps").getAsDouble();
+            }
+            if (vision.has("deadline ms")) {
+                cam.schedule.deadlineMillis = vision.get("deadline ms").getAsDouble();
+            }
+        }
 
         cam.config = config;
 
@@ -153,10 +300,241 @@ public final class Main {
         }
         cam.key = keyElement.getAsString();
 
+        // bandwidth budget
+        if (config.has("max mbps")) {
+            cam.maxMbps = config.get("max mbps").getAsDouble();
+        }
+
         switchedCameraConfigs.add(cam);
         return true;
     }
 
+    /**
+     * Read single distance sensor configuration.
+     */
+    public static boolean readDistanceSensorConfig(JsonObject config) {
+        DistanceSensorConfig sensor = new DistanceSensorConfig();
+
+        // name
+        JsonElement nameElement = config.get("name");
+        if (nameElement == null) {
+            parseError("could not read distance sensor name");
+            return false;
+        }
+        sensor.name = nameElement.getAsString();
+
+        // simulated distance
+        if (config.has("simulated distance")) {
+            sensor.simulatedDistance = config.get("simulated distance").getAsDouble();
+        }
+
+        // pins, not needed when simulated
+        if (sensor.simulatedDistance < 0) {
+            JsonElement echoElement = config.get("echo pin");
+            JsonElement trigElement = config.get("trig pin");
+            if (echoElement == null || trigElement == null) {
+                parseError("distance sensor '" + sensor.name + "': could not read echo and trig pins");
+                return false;
+            }
+            sensor.echoPin = RaspiPin.getPinByAddress(echoElement.getAsInt());
+            sensor.trigPin = RaspiPin.getPinByAddress(trigElement.getAsInt());
+            if (sensor.echoPin == null || sensor.trigPin == null) {
+                parseError("distance sensor '" + sensor.name + "': unknown pin number");
+                return false;
+            }
+        }
+
+        // mode
+        if (config.has("mode")) {
+            String str = config.get("mode").getAsString();
+            if ("edge".equalsIgnoreCase(str)) {
+                sensor.mode = DistanceMonitor.Mode.EDGE;
+            } else if ("poll".equalsIgnoreCase(str)) {
+                sensor.mode = DistanceMonitor.Mode.POLL;
+            } else {
+                parseError("distance sensor '" + sensor.name + "': could not understand mode value '" + str + "'");
+            }
+        }
+
+        // sampling
+        if (config.has("period ms")) {
+            sensor.periodMillis = config.get("period ms").getAsDouble();
+        }
+        if (config.has("median window")) {
+            int window = config.get("median window").getAsInt();
+            if (window < 1) {
+                parseError("distance sensor '" + sensor.name + "': median window must be at least 1");
+                return false;
+            }
+            sensor.medianWindow = window;
+        }
+        if (config.has("max age ms")) {
+            sensor.maxAgeMillis = config.get("max age ms").getAsDouble();
+        }
+        if (config.has("max range cm")) {
+            sensor.maxRangeCm = config.get("max range cm").getAsDouble();
+        }
+
+        distanceSensorConfigs.add(sensor);
+        return true;
+    }
+
+    /**
+     * Read vision configuration.
+     */
+    public static boolean readVisionConfig(JsonObject config) {
+        // threshold engine
+        if (config.has("threshold engine")) {
+            String str = config.get("threshold engine").getAsString();
+            if ("opencv".equalsIgnoreCase(str)) {
+                visionConfig.thresholdEngine = LinePipeline.ThresholdEngine.OPENCV;
+            } else if ("lookup".equalsIgnoreCase(str)) {
+                visionConfig.thresholdEngine = LinePipeline.ThresholdEngine.LOOKUP;
+            } else {
+                parseError("could not understand threshold engine value '" + str + "'");
+            }
+        }
+
+        // lookup bits
+        if (config.has("lookup bits")) {
+            int bits = config.get("lookup bits").getAsInt();
+            if (bits < 1 || bits > 8) {
+                parseError("lookup bits must be between 1 and 8");
+                return false;
+            }
+            visionConfig.lookupBits = bits;
+        }
+
+        // latency test
+        if (config.has("latency test")) {
+            visionConfig.latencyTest = config.get("latency test").getAsBoolean();
+        }
+
+        // legacy entries
+        if (config.has("legacy entries")) {
+            visionConfig.legacyEntries = config.get("legacy entries").getAsBoolean();
+        }
+
+        // flush period
+        if (config.has("flush period ms")) {
+            Brain.flushPeriodNanos = (long) (config.get("flush period ms").getAsDouble() * 1e6);
+        }
+
+        // workers
+        if (config.has("workers")) {
+            int workers = config.get("workers").getAsInt();
+            if (workers < 1) {
+                parseError("workers must be at least 1");
+                return false;
+            }
+            visionConfig.workers = workers;
+        }
+
+        // region of interest tracking
+        if (config.has("roi")) {
+            visionConfig.regionTracking = config.get("roi").getAsBoolean();
+        }
+        if (config.has("roi margin")) {
+            visionConfig.regionMargin = config.get("roi margin").getAsDouble();
+        }
+        if (config.has("roi misses")) {
+            visionConfig.regionMisses = config.get("roi misses").getAsInt();
+        }
+
+        // pyramid levels
+        if (config.has("pyramid levels")) {
+            int levels = config.get("pyramid levels").getAsInt();
+            if (levels < 0 || levels > 3) {
+                parseError("pyramid levels must be between 0 and 3");
+                return false;
+            }
+            visionConfig.pyramidLevels = levels;
+        }
+
+        // frame change gating
+        if (config.has("change threshold")) {
+            visionConfig.changeThreshold = config.get("change threshold").getAsDouble();
+        }
+        if (config.has("change max skips")) {
+            visionConfig.changeMaxSkips = config.get("change max skips").getAsInt();
+        }
+
+        // geometry engine
+        if (config.has("geometry engine")) {
+            String str = config.get("geometry engine").getAsString();
+            if ("java".equalsIgnoreCase(str)) {
+                visionConfig.geometryEngine = Vision.GeometryEngine.JAVA;
+            } else if ("opencv".equalsIgnoreCase(str)) {
+                visionConfig.geometryEngine = Vision.GeometryEngine.OPENCV;
+            } else {
+                parseError("could not understand geometry engine value '" + str + "'");
+            }
+        }
+
+        // candidates
+        if (config.has("candidates")) {
+            int candidates = config.get("candidates").getAsInt();
+            if (candidates < 1) {
+                parseError("candidates must be at least 1");
+                return false;
+            }
+            visionConfig.candidates = candidates;
+        }
+
+        // tracking filter
+        if (config.has("track alpha")) {
+            visionConfig.trackAlpha = config.get("track alpha").getAsDouble();
+        }
+        if (config.has("track beta")) {
+            visionConfig.trackBeta = config.get("track beta").getAsDouble();
+        }
+        if (config.has("track coast ms")) {
+            visionConfig.trackCoastMillis = config.get("track coast ms").getAsDouble();
+        }
+
+        // black box
+        if (config.has("record seconds")) {
+            visionConfig.recordSeconds = config.get("record seconds").getAsDouble();
+        }
+        if (config.has("record dir")) {
+            visionConfig.recordDir = config.get("record dir").getAsString();
+        }
+        if (config.has("record files")) {
+            int files = config.get("record files").getAsInt();
+            if (files < 1) {
+                parseError("record files must be at least 1");
+                return false;
+            }
+            visionConfig.recordFiles = files;
+        }
+
+        // result log
+        if (config.has("log dir")) {
+            visionConfig.logDir = config.get("log dir").getAsString();
+        }
+        if (config.has("log max kb")) {
+            int kb = config.get("log max kb").getAsInt();
+            if (kb < 1) {
+                parseError("log max kb must be at least 1");
+                return false;
+            }
+            visionConfig.logMaxKb = kb;
+        }
+        if (config.has("log files")) {
+            int files = config.get("log files").getAsInt();
+            if (files < 1) {
+                parseError("log files must be at least 1");
+                return false;
+            }
+            visionConfig.logFiles = files;
+        }
+        if (config.has("log line rate")) {
+            visionConfig.logLineRate = config.get("log line rate").getAsDouble();
+        }
+
+        return true;
+    }
+
     /**
      * Read configuration file.
      */
@@ -220,31 +598,62 @@ public final class Main {
             }
         }
 
+        // distance sensors (optional)
+        if (obj.has("distance sensors")) {
+            JsonArray distanceSensors = obj.get("distance sensors").getAsJsonArray();
+            for (JsonElement sensor : distanceSensors) {
+                if (!readDistanceSensorConfig(sensor.getAsJsonObject())) {
+                    return false;
+                }
+            }
+        }
+
+        // vision (optional)
+        if (obj.has("vision")) {
+            if (!readVisionConfig(obj.get("vision").getAsJsonObject())) {
+                return false;
+            }
+        }
+
         return true;
     }
 
     /**
-     * Start running the camera.
+     * Open and set up the camera. Several cameras can be opened at once.
      */
-    public static VideoSource startCamera(CameraConfig config) {
-        System.out.println("Starting camera '" + config.name + "' on " + config.path);
-        CameraServer inst = CameraServer.getInstance();
+    public static UsbCamera openCamera(CameraConfig config) {
+        System.out.println("Opening camera '" + config.name + "' on " + config.path);
         UsbCamera camera = new UsbCamera(config.name, config.path);
-        MjpegServer server = inst.startAutomaticCapture(camera);
 
-        Gson gson = new GsonBuilder().create();
-
-        camera.setConfigJson(gson.toJson(config.config));
+        // Keep it open while starting up, the stream policy can let it close once vision is running
         camera.setConnectionStrategy(VideoSource.ConnectionStrategy.kKeepOpen);
 
-        if (config.streamConfig != null) {
-            server.setConfigJson(gson.toJson(config.streamConfig));
-        }
+        Gson gson = new GsonBuilder().create();
+        camera.setConfigJson(gson.toJson(config.config));
 
         camera.setFPS(30);
         camera.setBrightness(50);
         camera.setExposureManual(40);
 
+        StartupReport.cameraOpened(config.name);
+        return camera;
+    }
+
+    /**
+     * Start running the opened camera.
+     */
+    public static VideoSource startCamera(CameraConfig config, UsbCamera camera) {
+        System.out.println("Starting camera '" + config.name + "' on " + config.path);
+        CameraServer inst = CameraServer.getInstance();
+        MjpegServer server = inst.startAutomaticCapture(camera);
+
+        if (config.streamConfig != null) {
+            Gson gson = new GsonBuilder().create();
+            server.setConfigJson(gson.toJson(config.streamConfig));
+        }
+        streamPolicies.add(new StreamPolicy(server, camera, config.stream,
+            NetworkTableInstance.getDefault().getTable("Shuffleboard/Streams/" + config.name)));
+
         return camera;
     }
 
@@ -254,6 +663,19 @@ public final class Main {
     public static MjpegServer startSwitchedCamera(SwitchedCameraConfig config) {
         System.out.println("Starting switched camera '" + config.name + "' on " + config.key);
         MjpegServer server = CameraServer.getInstance().addSwitchedCamera(config.name);
+        NetworkTable table = NetworkTableInstance.getDefault().getTable("Shuffleboard/Streams/" + config.name);
+        StreamPolicy policy = new StreamPolicy(server, null, new StreamPolicy.Settings(), table);
+        streamPolicies.add(policy);
+
+        // With a budget, the governor switches the cameras so it can keep the stream under it
+        Consumer<VideoSource> setSource;
+        if (config.maxMbps > 0) {
+            StreamGovernor governor = new StreamGovernor(config.name, policy, config.maxMbps, table);
+            governor.start();
+            setSource = governor::setSource;
+        } else {
+            setSource = server::setSource;
+        }
 
         NetworkTableInstance.getDefault()
             .getEntry(config.key)
@@ -261,13 +683,13 @@ public final class Main {
                   if (event.value.isDouble()) {
                       int i = (int) event.value.getDouble();
                       if (i >= 0 && i < cameras.size()) {
-                          server.setSource(cameras.get(i));
+                          setSource.accept(cameras.get(i));
                       }
                   } else if (event.value.isString()) {
                       String str = event.value.getString();
                       for (int i = 0; i < cameraConfigs.size(); i++) {
                           if (str.equals(cameraConfigs.get(i).name)) {
-                              server.setSource(cameras.get(i));
+                              setSource.accept(cameras.get(i));
                               break;
                           }
                       }
@@ -279,28 +701,44 @@ public final class Main {
     }
 
     /**
-     * Main.
+     * Start line detection on the camera, recording its frames in the black box if there is one.
      */
-    public static void main(String... args) {
-        if (args.length > 0) {
-            configFile = args[0];
-        }
-
-        // read configuration
-        if (!readConfig()) {
-            return;
+    public static void startVision(Vision vision, VideoSource camera, CameraConfig config,
+                                   VisionScheduler scheduler, BlackBox blackBox) {
+        FrameSource source = new CameraFrameSource(camera);
+        if (blackBox != null) {
+            double fps = camera.getVideoMode().fps > 0 ? camera.getVideoMode().fps : 30;
+            FrameRecorder recorder = blackBox.add(camera.getName(), visionConfig.recordSeconds, fps);
+            source = new RecordingFrameSource(source, recorder);
+            vision.setResultSink(recorder);
         }
+        vision.startLineDetection(source, camera, FrameGrabber.Pace.LIVE, scheduler, config.schedule);
+    }
 
-        // start NetworkTables
-        NetworkTableInstance ntinst = NetworkTableInstance.getDefault();
-        if (server) {
-            System.out.println("Setting up NetworkTables server");
-            ntinst.startServer();
+    /**
+     * Set up a distance sensor to be sampled by the array.
+     */
+    public static DistanceSampler createDistanceSensor(DistanceSensorConfig config, NetworkTableInstance ntinst,
+                                                      SimulatedSensorPins.Room room) {
+        SensorPins pins;
+        if (config.simulatedDistance >= 0) {
+            System.out.println("Starting simulated distance sensor '" + config.name + "' at " + config.simulatedDistance + " cm");
+            pins = new SimulatedSensorPins(config.simulatedDistance, room);
         } else {
-            System.out.println("Setting up NetworkTables client for team " + team);
-            ntinst.startClientTeam(team);
+            System.out.println("Starting distance sensor '" + config.name + "' on " + config.echoPin + " and " + config.trigPin);
+            pins = new Pi4jSensorPins(config.echoPin, config.trigPin);
         }
+        DistanceMonitor monitor = new DistanceMonitor(pins, config.mode);
 
+        NetworkTable table = ntinst.getTable("Shuffleboard/Distance/" + config.name);
+        return new DistanceSampler(config.name, monitor, config.periodMillis, config.medianWindow,
+            config.maxAgeMillis, config.maxRangeCm, table);
+    }
+
+    /**
+     * Point the Brain's entries at the NetworkTables instance.
+     */
+    public static void setupBrain(NetworkTableInstance ntinst) {
         NetworkTable hsvTable = ntinst.getTable("Shuffleboard/Vision/HSV Thresholds");
         Brain.hueMinEntry = hsvTable.getEntry("Hue Minimum");
         Brain.hueMaxEntry = hsvTable.getEntry("Hue Maximum");
@@ -308,6 +746,7 @@ public final class Main {
         Brain.saturationMaxEntry = hsvTable.getEntry("Saturation Maximum");
         Brain.valueMinEntry = hsvTable.getEntry("Value Minimum");
         Brain.valueMaxEntry = hsvTable.getEntry("Value Maximum");
+        Brain.listenForHsvThresholds(hsvTable);
 
         NetworkTable frontCameraTable = ntinst.getTable("Shuffleboard/Vision/Front Camera");
         Brain.frontLineContoursEntry = frontCameraTable.getEntry("Front Line Contours");
@@ -315,6 +754,11 @@ public final class Main {
         Brain.frontLineAngleEntry = frontCameraTable.getEntry("Front Line Angle");
         Brain.frontLineXcenterEntry = frontCameraTable.getEntry("Front Line Center X");
         Brain.frontLineYcenterEntry = frontCameraTable.getEntry("Front Line Center Y");
+        Brain.frontLineTimestampEntry = frontCameraTable.getEntry("Front Line Timestamp");
+        Brain.frontLineResultEntry = frontCameraTable.getEntry("Front Line Result");
+        Brain.frontLineCandidatesEntry = frontCameraTable.getEntry("Front Line Candidates");
+        Brain.frontLineTrackEntry = frontCameraTable.getEntry("Front Line Track");
+        Brain.frontNativeMemoryEntry = frontCameraTable.getEntry("Front Native Memory");
 
         NetworkTable leftCameraTable = ntinst.getTable("Shuffleboard/Vision/Left Camera");
         Brain.leftLineContoursEntry = leftCameraTable.getEntry("Left Line Contours");
@@ -322,6 +766,11 @@ public final class Main {
         Brain.leftLineAngleEntry = leftCameraTable.getEntry("Left Line Angle");
         Brain.leftLineXcenterEntry = leftCameraTable.getEntry("Left Line Center X");
         Brain.leftLineYcenterEntry = leftCameraTable.getEntry("Left Line Center Y");
+        Brain.leftLineTimestampEntry = leftCameraTable.getEntry("Left Line Timestamp");
+        Brain.leftLineResultEntry = leftCameraTable.getEntry("Left Line Result");
+        Brain.leftLineCandidatesEntry = leftCameraTable.getEntry("Left Line Candidates");
+        Brain.leftLineTrackEntry = leftCameraTable.getEntry("Left Line Track");
+        Brain.leftNativeMemoryEntry = leftCameraTable.getEntry("Left Native Memory");
 
         NetworkTable rightCameraTable = ntinst.getTable("Shuffleboard/Vision/Right Camera");
         Brain.rightLineContoursEntry = rightCameraTable.getEntry("Right Line Contours");
@@ -329,10 +778,68 @@ public final class Main {
         Brain.rightLineAngleEntry = rightCameraTable.getEntry("Right Line Angle");
         Brain.rightLineXcenterEntry = rightCameraTable.getEntry("Right Line Center X");
         Brain.rightLineYcenterEntry = rightCameraTable.getEntry("Right Line Center Y");
+        Brain.rightLineTimestampEntry = rightCameraTable.getEntry("Right Line Timestamp");
+        Brain.rightLineResultEntry = rightCameraTable.getEntry("Right Line Result");
+        Brain.rightLineCandidatesEntry = rightCameraTable.getEntry("Right Line Candidates");
+        Brain.rightLineTrackEntry = rightCameraTable.getEntry("Right Line Track");
+        Brain.rightNativeMemoryEntry = rightCameraTable.getEntry("Right Native Memory");
+
+        Brain.metricsTable = ntinst.getTable("Shuffleboard/Vision/Metrics");
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        if (args.length > 0) {
+            configFile = args[0];
+        }
+
+        // read configuration
+        if (!readConfig()) {
+            return;
+        }
+
+        // start NetworkTables
+        NetworkTableInstance ntinst = NetworkTableInstance.getDefault();
+        if (server) {
+            System.out.println("Setting up NetworkTables server");
+            ntinst.startServer();
+        } else {
+            System.out.println("Setting up NetworkTables client for team " + team);
+            ntinst.startClientTeam(team);
+        }
+
+        setupBrain(ntinst);
+
+        // report how long each camera takes to start after a cold boot
+        StartupReport.start(ntinst.getTable("Shuffleboard/Vision/Startup"));
+
+        // estimate the offset to the robot's clock for the frame timestamps
+        ClockSync clockSync = new ClockSync(ntinst.getTable("Shuffleboard/Vision/Clock"));
+        clockSync.start();
 
-        // start cameras
+        // cscore only measures the camera frame rates used for the metrics when this is set
+        CameraServerJNI.setTelemetryPeriod(1.0);
+
+        // open the cameras at once, since each takes a while, then start them in order so the
+        // stream ports don't depend on which one opened first
+        ExecutorService opener = Executors.newFixedThreadPool(Math.max(cameraConfigs.size(), 1));
+        List<Future<UsbCamera>> opening = new ArrayList<>();
         for (CameraConfig config : cameraConfigs) {
-            cameras.add(startCamera(config));
+            opening.add(opener.submit(() -> openCamera(config)));
+        }
+        try {
+            for (int i = 0; i < cameraConfigs.size(); i++) {
+                cameras.add(startCamera(cameraConfigs.get(i), opening.get(i).get()));
+            }
+        }
+        catch (InterruptedException | ExecutionException ex) {
+            System.err.println("could not open the cameras: " + ex);
+            return;
+        }
+        finally {
+            opener.shutdown();
         }
 
         // start switched cameras
@@ -343,30 +850,62 @@ public final class Main {
         // start image processing on cameras 0, 1, and 2 if present
         int numOfCameras = cameras.size();
         System.out.println("Number of cameras: " + numOfCameras);
-        Vision frontVis = new Vision(Vision.CameraPosition.FRONT);
-        Vision leftVis = new Vision(Vision.CameraPosition.LEFT);
-        Vision rightVis = new Vision(Vision.CameraPosition.RIGHT);
-        frontVis.startLineDetection(cameras.get(0));
-        leftVis.startLineDetection(cameras.get(1));
-        rightVis.startLineDetection(cameras.get(2));
-
-        // start the distance sensor
+        Vision frontVis = new Vision(Vision.CameraPosition.FRONT, visionConfig);
+        Vision leftVis = new Vision(Vision.CameraPosition.LEFT, visionConfig);
+        Vision rightVis = new Vision(Vision.CameraPosition.RIGHT, visionConfig);
+        VisionScheduler scheduler = new VisionScheduler(visionConfig.workers);
+
+        // keep the last seconds of the vision cameras to save when detection goes wrong
+        BlackBox blackBox = null;
+        if (visionConfig.recordSeconds > 0) {
+            blackBox = new BlackBox(new File(visionConfig.recordDir), visionConfig.recordFiles,
+                ntinst.getTable("Shuffleboard/Vision/Black Box"));
+        }
+        // log the results to rolling files off the vision threads
+        VisionLog log = null;
+        if (!visionConfig.logDir.isEmpty()) {
+            log = new VisionLog(new File(visionConfig.logDir), visionConfig.logMaxKb * 1024L, visionConfig.logFiles);
+            log.setRate(VisionLog.Type.LINE, visionConfig.logLineRate, 1);
+            log.setRate(VisionLog.Type.FOUND, LOG_CHANGE_RATE, LOG_CHANGE_BURST);
+            log.setRate(VisionLog.Type.LOST, LOG_CHANGE_RATE, LOG_CHANGE_BURST);
+            frontVis.setLog(log);
+            leftVis.setLog(log);
+            rightVis.setLog(log);
+        }
+
+        startVision(frontVis, cameras.get(0), cameraConfigs.get(0), scheduler, blackBox);
+        startVision(leftVis, cameras.get(1), cameraConfigs.get(1), scheduler, blackBox);
+        startVision(rightVis, cameras.get(2), cameraConfigs.get(2), scheduler, blackBox);
+        scheduler.start();
+        if (blackBox != null) {
+            blackBox.start();
+        }
+        if (log != null) {
+            log.start();
+        }
+
+        // now vision holds its cameras open, the rest only need to be open while watched
+        for (StreamPolicy policy : streamPolicies) {
+            policy.startOnDemand();
+        }
+
+        // start the distance sensors
         // https://www.techcoil.com/blog/helpful-gpio-pinout-resources-that-you-can-reference-while-connecting-sensors-to-your-raspberry-pi-3/
         // https://pinout.xyz/pinout/wiringpi
         // https://tutorials-raspberrypi.com/raspberry-pi-ultrasonic-sensor-hc-sr04/
         // https://www.modmypi.com/blog/hc-sr04-ultrasonic-range-sensor-on-the-raspberry-pi
-        // Pin echoPin = RaspiPin.GPIO_05; // PI4J custom numbering (pin 20)
-        // Pin trigPin = RaspiPin.GPIO_04; // PI4J custom numbering (pin 18)
-        // DistanceMonitor monitor = new DistanceMonitor(echoPin, trigPin);
+        // The sensors take turns so none of them hears another's echo
+        DistanceSensorArray distanceSensors = new DistanceSensorArray();
+        SimulatedSensorPins.Room room = new SimulatedSensorPins.Room();
+        for (DistanceSensorConfig config : distanceSensorConfigs) {
+            distanceSensors.add(createDistanceSensor(config, ntinst, room));
+        }
+        if (!distanceSensors.getSensors().isEmpty()) {
+            distanceSensors.start();
+        }
 
         // loop forever
         for (;;) {
-            // try {
-            //     System.out.printf("%1$d,%2$.3f%n", System.currentTimeMillis(), monitor.measureDistance());
-            // }
-            // catch (TimeoutException e) {
-            //     System.err.println("ERORREWARRAWEF GREGFj'peargjpoaggo: " + e);
-            // }
             try {
                 Thread.sleep(10000);
             }
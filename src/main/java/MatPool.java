@@ -0,0 +1,83 @@
+import java.util.ArrayList;
+
+import org.opencv.core.*;
+
+
+/**
+ * A pool of Mats reused from frame to frame by one pipeline.
+ *
+ * <p>A Mat acquired during a frame is handed back by {@link #recycle()} at the end of the frame, and
+ * keeps its native buffer so the next frame can reuse it without allocating. {@link #release()} frees
+ * every native buffer right away instead of waiting for the garbage collector to run the finalizers.
+ *
+ * <p>Not thread safe; each pipeline owns its own pool.
+ */
+public class MatPool {
+
+    private final ArrayList<Mat> free = new ArrayList<>();
+    private final ArrayList<Mat> inUse = new ArrayList<>();
+
+    /**
+     * Gets a Mat for use until the next call to recycle. Its contents and size are whatever it was
+     * last used for, so it should be used as an output.
+     */
+    public Mat acquire() {
+        Mat mat;
+        if (free.isEmpty()) {
+            mat = new Mat();
+        }
+        else {
+            mat = free.remove(free.size() - 1);
+        }
+        inUse.add(mat);
+        return mat;
+    }
+
+    /**
+     * Hands every acquired Mat back to the pool.
+     */
+    public void recycle() {
+        free.addAll(inUse);
+        inUse.clear();
+    }
+
+    /**
+     * Frees the native memory of every Mat in the pool.
+     */
+    public void release() {
+        recycle();
+        for (Mat mat : free) {
+            mat.release();
+        }
+        free.clear();
+    }
+
+    /**
+     * Gets the number of Mats the pool has created.
+     */
+    public int size() {
+        return free.size() + inUse.size();
+    }
+
+    /**
+     * Gets the bytes of image data held by the pool.
+     */
+    public long nativeBytes() {
+        long bytes = 0;
+        for (int i = 0; i < free.size(); i++) {
+            bytes += nativeBytes(free.get(i));
+        }
+        for (int i = 0; i < inUse.size(); i++) {
+            bytes += nativeBytes(inUse.get(i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the bytes of image data held by a Mat.
+     */
+    public static long nativeBytes(Mat mat) {
+        return mat.total() * mat.elemSize();
+    }
+
+}
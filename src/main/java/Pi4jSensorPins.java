@@ -0,0 +1,81 @@
+import com.pi4j.io.gpio.GpioController;
+import com.pi4j.io.gpio.GpioFactory;
+import com.pi4j.io.gpio.GpioPinDigitalInput;
+import com.pi4j.io.gpio.GpioPinDigitalOutput;
+import com.pi4j.io.gpio.Pin;
+import com.pi4j.wiringpi.GpioInterrupt;
+import com.pi4j.wiringpi.GpioInterruptListener;
+import com.pi4j.wiringpi.GpioUtil;
+
+
+/**
+ * Sensor pins on the rPi's GPIO through pi4j.
+ *
+ * <p>pi4j's pin listeners are run on a thread pool, so the two edges of a pulse can be handled
+ * on different threads and in either order. The edges are instead taken straight from pi4j's
+ * native interrupt thread for the pin, which reports them one at a time in order. They still come
+ * without a timestamp, so an edge is stamped when the listener runs, and how late that is varies
+ * from edge to edge and goes straight into the pulse width.
+ */
+public class Pi4jSensorPins implements SensorPins {
+
+    private final GpioController gpio;
+    private final GpioPinDigitalInput echoPin;
+    private final GpioPinDigitalOutput trigPin;
+    private final int echoAddress;
+    private final GpioInterruptListener interruptListener;
+    private volatile EdgeListener echoListener;
+
+    public Pi4jSensorPins(Pin echoPin, Pin trigPin) {
+        this.gpio = GpioFactory.getInstance();
+        this.echoPin = gpio.provisionDigitalInputPin(echoPin);
+        this.trigPin = gpio.provisionDigitalOutputPin(trigPin);
+        this.trigPin.low();
+        this.echoAddress = echoPin.getAddress();
+        this.interruptListener = event -> {
+            long now = System.nanoTime();
+            EdgeListener listener = echoListener;
+            // The listener hears every pin with interrupts enabled
+            if (listener != null && event.getPin() == echoAddress) {
+                listener.edge(event.getState(), now);
+            }
+        };
+    }
+
+    @Override
+    public void setTrigger(boolean high) {
+        if (high) {
+            trigPin.high();
+        }
+        else {
+            trigPin.low();
+        }
+    }
+
+    @Override
+    public boolean isEchoHigh() {
+        return echoPin.isHigh();
+    }
+
+    @Override
+    public synchronized void setEchoListener(EdgeListener listener) {
+        // The native thread watching the pin only runs while somebody listens
+        if (listener != null && echoListener == null) {
+            GpioUtil.setEdgeDetection(echoAddress, GpioUtil.EDGE_BOTH);
+            GpioInterrupt.addListener(interruptListener);
+            GpioInterrupt.enablePinStateChangeCallback(echoAddress);
+        }
+        else if (listener == null && echoListener != null) {
+            GpioInterrupt.disablePinStateChangeCallback(echoAddress);
+            GpioInterrupt.removeListener(interruptListener);
+        }
+        this.echoListener = listener;
+    }
+
+    @Override
+    public void close() {
+        setEchoListener(null);
+        gpio.unprovisionPin(echoPin, trigPin);
+    }
+
+}
@@ -0,0 +1,150 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+
+/**
+ * Replays a camera's frames saved by the black box, labelled with the results the rPi published
+ * for them so they can be compared with the replayed results. The file is memory mapped, so
+ * nothing is read until the frame is.
+ */
+public class RecordingFileSource extends ReplayFrameSource {
+
+    /**
+     * Where the frames are in a saved file.
+     */
+    private static final class Recording {
+        final ByteBuffer buffer;
+        final String name;
+        final double fps;
+        final int[] offsets;
+
+        Recording(File file) {
+            try (FileChannel channel = FileChannel.open(file.toPath())) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer = mapped;
+                byte[] magic = new byte[FrameRecorder.MAGIC.length];
+                mapped.get(magic);
+                if (!Arrays.equals(magic, FrameRecorder.MAGIC) || mapped.getInt() != FrameRecorder.VERSION) {
+                    throw new IllegalArgumentException(file.getPath() + " isn't a black box recording");
+                }
+                byte[] nameBytes = new byte[mapped.getShort()];
+                mapped.get(nameBytes);
+                name = new String(nameBytes, StandardCharsets.UTF_8);
+                fps = mapped.getDouble();
+                offsets = new int[mapped.getInt()];
+                for (int i = 0; i < offsets.length; i++) {
+                    offsets[i] = mapped.position();
+                    int rows = mapped.getInt(offsets[i] + Long.BYTES);
+                    int cols = mapped.getInt(offsets[i] + Long.BYTES + Integer.BYTES);
+                    int type = mapped.getInt(offsets[i] + Long.BYTES + 2 * Integer.BYTES);
+                    long end = offsets[i] + FrameRecorder.FRAME_HEADER_BYTES + (long) rows * cols * CvType.ELEM_SIZE(type);
+                    if (end > mapped.limit()) {
+                        throw new BufferUnderflowException();
+                    }
+                    mapped.position((int) end);
+                }
+            }
+            catch (IOException ex) {
+                throw new IllegalArgumentException("could not read " + file.getPath() + ": " + ex, ex);
+            }
+            catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+                throw new IllegalArgumentException(file.getPath() + " is cut short", ex);
+            }
+        }
+    }
+
+    private final ByteBuffer buffer;
+    private final int[] offsets;
+
+    // Only used by the thread reading the frames
+    private byte[] pixels = new byte[0];
+
+    /**
+     * @param file the file saved by the black box
+     * @param defaultFps the rate to replay it at in real time if it held too few frames to tell
+     */
+    public RecordingFileSource(File file, double defaultFps) {
+        this(new Recording(file), defaultFps);
+    }
+
+    private RecordingFileSource(Recording recording, double defaultFps) {
+        super(recording.name, recording.fps > 0 ? recording.fps : defaultFps);
+        this.buffer = recording.buffer;
+        this.offsets = recording.offsets;
+    }
+
+    public int getCount() {
+        return offsets.length;
+    }
+
+    @Override
+    protected boolean read(int index, Mat frame) {
+        if (index >= offsets.length) {
+            return false;
+        }
+        int offset = offsets[index];
+        int rows = buffer.getInt(offset + Long.BYTES);
+        int cols = buffer.getInt(offset + Long.BYTES + Integer.BYTES);
+        int type = buffer.getInt(offset + Long.BYTES + 2 * Integer.BYTES);
+        frame.create(rows, cols, type);
+        int bytes = (int) (frame.total() * frame.elemSize());
+        if (pixels.length != bytes) {
+            pixels = new byte[bytes];
+        }
+        ByteBuffer data = buffer.duplicate();
+        data.position(offset + FrameRecorder.FRAME_HEADER_BYTES);
+        data.get(pixels);
+        if (bytes > 0) {
+            frame.put(0, 0, pixels);
+        }
+        return true;
+    }
+
+    /**
+     * Gets the result the rPi published for a frame, as in LineResult.toArray().
+     * @return false if there is no such frame or it was saved without a result
+     */
+    public boolean getRecorded(int index, double[] result) {
+        if (index < 0 || index >= offsets.length) {
+            return false;
+        }
+        int offset = offsets[index] + Long.BYTES + 3 * Integer.BYTES;
+        if (buffer.getInt(offset) == 0) {
+            return false;
+        }
+        for (int i = 0; i < LineResult.SIZE; i++) {
+            result[i] = buffer.getDouble(offset + Integer.BYTES + i * Double.BYTES);
+        }
+        return true;
+    }
+
+    /**
+     * Describes the result the rPi published for a frame.
+     */
+    @Override
+    public String getLabel(int index) {
+        if (index < 0 || index >= offsets.length) {
+            return "";
+        }
+        double[] result = new double[LineResult.SIZE];
+        if (!getRecorded(index, result)) {
+            return "recorded no result";
+        }
+        if (result[LineResult.AREA] <= 0) {
+            return "recorded none";
+        }
+        return String.format(Locale.ROOT, "recorded x=%.1f y=%.1f angle=%.1f",
+            result[LineResult.CENTER_X], result[LineResult.CENTER_Y], result[LineResult.ANGLE]);
+    }
+
+}
@@ -0,0 +1,41 @@
+import org.opencv.core.Mat;
+
+
+/**
+ * Passes another source's frames through, recording each one on the way, on the capture thread.
+ */
+public class RecordingFrameSource implements FrameSource {
+
+    private final FrameSource source;
+    private final FrameRecorder recorder;
+
+    public RecordingFrameSource(FrameSource source, FrameRecorder recorder) {
+        this.source = source;
+        this.recorder = recorder;
+    }
+
+    @Override
+    public String getName() {
+        return source.getName();
+    }
+
+    @Override
+    public long readFrame(Mat frame) {
+        long frameTime = source.readFrame(frame);
+        if (frameTime > 0) {
+            recorder.record(frame, frameTime);
+        }
+        return frameTime;
+    }
+
+    @Override
+    public String getError() {
+        return source.getError();
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+
+}
@@ -0,0 +1,84 @@
+import org.opencv.core.Rect;
+
+
+/**
+ * Chooses the region of the next frame to search for the line in.
+ *
+ * <p>After a hit the region is the line's bounding box grown by a margin on every side. Each miss
+ * grows the margin further, and after too many misses in a row the whole frame is searched again
+ * until the line is found. The region may stick out past the frame; LinePipeline clips it.
+ */
+public class RegionTracker {
+
+    // Never smaller than this on each side, so small or thin lines still get room to move
+    private static final int MIN_MARGIN_PIXELS = 16;
+
+    private final double margin;
+    private final double growth;
+    private final int maxMisses;
+
+    private Rect lastHit;
+    private int misses;
+    private final Rect region = new Rect();
+
+    /**
+     * @param margin the fraction of the line's size added on every side after a hit
+     * @param growth how much the margin is multiplied by after every miss
+     * @param maxMisses the misses in a row after which the whole frame is searched
+     */
+    public RegionTracker(double margin, double growth, int maxMisses) {
+        this.margin = margin;
+        this.growth = growth;
+        this.maxMisses = maxMisses;
+    }
+
+    /**
+     * Records the bounding box of the line found in the frame, in full frame coordinates.
+     */
+    public void hit(Rect boundingBox) {
+        lastHit = boundingBox;
+        misses = 0;
+    }
+
+    /**
+     * Records a frame in which no line was found.
+     */
+    public void miss() {
+        if (lastHit != null && ++misses >= maxMisses) {
+            lastHit = null;
+        }
+    }
+
+    /**
+     * Gets the region to search next, or null for the whole frame. The same Rect is reused every call.
+     */
+    public Rect getRegion() {
+        if (lastHit == null) {
+            return null;
+        }
+        double scale = margin * Math.pow(growth, misses);
+        int marginX = Math.max(MIN_MARGIN_PIXELS, (int) Math.ceil(lastHit.width * scale));
+        int marginY = Math.max(MIN_MARGIN_PIXELS, (int) Math.ceil(lastHit.height * scale));
+        region.x = lastHit.x - marginX;
+        region.y = lastHit.y - marginY;
+        region.width = lastHit.width + 2 * marginX;
+        region.height = lastHit.height + 2 * marginY;
+        return region;
+    }
+
+    /**
+     * Gets the number of misses in a row since the last hit.
+     */
+    public int getMisses() {
+        return misses;
+    }
+
+    /**
+     * Forgets the line so the whole frame is searched.
+     */
+    public void reset() {
+        lastHit = null;
+        misses = 0;
+    }
+
+}
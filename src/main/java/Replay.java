@@ -0,0 +1,359 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.opencv.core.Size;
+
+import edu.wpi.cscore.CameraServerJNI;
+import edu.wpi.first.networktables.NetworkTableInstance;
+
+
+/**
+ * Runs the vision code on recorded or generated frames instead of a camera, so detection can be
+ * regression tested and throughput measured on a laptop with no cameras or robot.
+ *
+ * <p>The frames go through the same FrameGrabber, VisionScheduler, LinePipeline and Vision as on
+ * the rPi, as the front camera. The Brain publishes to a NetworkTables instance of its own, which
+ * nothing connects to. By default every frame is processed as fast as possible. In real time the
+ * frames are handed over at the rate they were captured at, and the ones processing can't keep up
+ * with are skipped as they would be with a camera.
+ *
+ * <p>The replay exits with an error if any frame goes unprocessed, or if too many results are wrong:
+ * for generated frames, those where the line was missed or found without being drawn, and with
+ * --expect, those that don't match the results of an earlier replay or of a black box recording.
+ */
+public final class Replay {
+
+    private static final double DEFAULT_FPS = 30;
+    private static final int DEFAULT_SYNTHETIC_FRAMES = 900;
+    private static final Size DEFAULT_SYNTHETIC_SIZE = new Size(320, 240);
+    // How long processing may go without finishing a frame before the replay gives up on it
+    private static final long STALL_NANOS = 5000000000L;
+    private static final int HISTOGRAM_WINDOW = 100000;
+    private static final double DEFAULT_TOLERANCE_PERCENT = 1;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: Replay <frames> [options]",
+        "  <frames>          a directory of images, a video file (e.g. an MJPEG AVI), a file saved",
+        "                    by the black box, or \"synthetic\"",
+        "  --csv <file>      write a row of results for every frame",
+        "  --real-time       hand the frames over at the rate they were captured, skipping any that",
+        "                    processing can't keep up with, instead of processing every one at once",
+        "  --fps <fps>       the rate the frames were captured at, if the file doesn't say (30)",
+        "  --size <WxH>      resize the frames, or the size of the synthetic frames (320x240)",
+        "  --count <frames>  the number of synthetic frames (900)",
+        "  --config <file>   read the \"vision\" settings from an frc.json",
+        "  --expect <file>   fail if the results differ from a CSV written with --csv, or with",
+        "                    \"recorded\" from the results a black box file was saved with",
+        "  --tolerance <%>   the share of wrong results allowed before failing (1)");
+
+    // Guarded by the lock
+    private static final Object lock = new Object();
+    private static final LatencyHistogram processing = new LatencyHistogram(HISTOGRAM_WINDOW);
+    private static long results;
+    private static long found;
+    private static long missed;
+    private static long falseLines;
+    private static long compared;
+    private static long mismatched;
+
+    private Replay() {
+    }
+
+    /**
+     * Main.
+     */
+    public static void main(String... args) {
+        String frames = null;
+        File csvFile = null;
+        File configFile = null;
+        String expect = null;
+        double tolerancePercent = DEFAULT_TOLERANCE_PERCENT;
+        FrameGrabber.Pace pace = FrameGrabber.Pace.EVERY_FRAME;
+        double fps = DEFAULT_FPS;
+        Size size = null;
+        int count = DEFAULT_SYNTHETIC_FRAMES;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--csv":
+                        csvFile = new File(args[++i]);
+                        break;
+                    case "--real-time":
+                        pace = FrameGrabber.Pace.REAL_TIME;
+                        break;
+                    case "--fps":
+                        fps = Double.parseDouble(args[++i]);
+                        break;
+                    case "--size":
+                        String[] dims = args[++i].split("x");
+                        if (dims.length != 2) {
+                            throw new IllegalArgumentException("size must be WxH, e.g. 160x120");
+                        }
+                        size = new Size(Integer.parseInt(dims[0]), Integer.parseInt(dims[1]));
+                        break;
+                    case "--count":
+                        count = Integer.parseInt(args[++i]);
+                        break;
+                    case "--config":
+                        configFile = new File(args[++i]);
+                        break;
+                    case "--expect":
+                        expect = args[++i];
+                        break;
+                    case "--tolerance":
+                        tolerancePercent = Double.parseDouble(args[++i]);
+                        break;
+                    default:
+                        if (args[i].startsWith("--") || frames != null) {
+                            throw new IllegalArgumentException("unknown argument " + args[i]);
+                        }
+                        frames = args[i];
+                        break;
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+            System.err.println(ex instanceof ArrayIndexOutOfBoundsException ? "missing value" : ex.getMessage());
+            frames = null;
+        }
+        if (frames == null) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+        if (configFile != null && !readVisionConfig(configFile)) {
+            System.exit(1);
+        }
+
+        // cscore loads OpenCV's native library, as it does for Main
+        CameraServerJNI.forceLoad();
+        Main.setupBrain(NetworkTableInstance.create());
+
+        ReplayFrameSource source;
+        try {
+            source = openFrames(frames, fps, size, count);
+        }
+        catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        ExpectedResults expected = null;
+        if (expect != null) {
+            expected = openExpected(expect, source);
+            if (expected == null) {
+                System.exit(1);
+            }
+        }
+
+        CsvResultSink csv = null;
+        if (csvFile != null) {
+            try {
+                csv = new CsvResultSink(csvFile, source);
+            }
+            catch (IOException ex) {
+                System.err.println("could not open '" + csvFile + "': " + ex);
+                System.exit(1);
+            }
+        }
+
+        long start = System.nanoTime();
+        LatestFrame replayed = replay(source, pace, csv, expected);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        source.close();
+
+        boolean ok = true;
+        if (csv != null) {
+            try {
+                csv.close();
+                System.out.println("Results written to " + csvFile);
+            }
+            catch (IOException ex) {
+                System.err.println("could not write '" + csvFile + "': " + ex);
+                ok = false;
+            }
+        }
+
+        synchronized (lock) {
+            System.out.printf(Locale.ROOT, "Replayed %d frames of %s in %.2f s: %.1f fps, %d skipped%n",
+                results, source.getName(), seconds, results / seconds, replayed.getSkipped());
+            System.out.printf(Locale.ROOT, "Processing: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                processing.getPercentile(50) / 1e6, processing.getPercentile(99) / 1e6, processing.getMax() / 1e6);
+            System.out.println("Line found in " + found + " frames");
+            double allowed = results * tolerancePercent / 100;
+            if (source instanceof SyntheticFrameSource) {
+                System.out.println("Line missed in " + missed + " frames, found with none drawn in " + falseLines);
+                if (missed + falseLines > allowed) {
+                    System.err.printf(Locale.ROOT, "FAILED: %d wrong results, more than %.1f%%%n",
+                        missed + falseLines, tolerancePercent);
+                    ok = false;
+                }
+            }
+            if (expected != null) {
+                System.out.println("Results differ from " + expect + " in " + mismatched + " of " + compared + " frames");
+                if (mismatched > compared * tolerancePercent / 100) {
+                    System.err.printf(Locale.ROOT, "FAILED: %d results differ, more than %.1f%%%n",
+                        mismatched, tolerancePercent);
+                    ok = false;
+                }
+                if (compared == 0) {
+                    System.err.println("FAILED: no frame had an expected result");
+                    ok = false;
+                }
+            }
+            if (results + replayed.getSkipped() != replayed.getPublished()) {
+                System.err.println("FAILED: " + (replayed.getPublished() - results - replayed.getSkipped())
+                    + " frames without results");
+                ok = false;
+            }
+        }
+        System.exit(ok ? 0 : 1);
+    }
+
+    /**
+     * Reads the settings in the "vision" object of a config file.
+     */
+    private static boolean readVisionConfig(File file) {
+        JsonElement top;
+        try {
+            top = new JsonParser().parse(Files.newBufferedReader(file.toPath()));
+        }
+        catch (IOException ex) {
+            System.err.println("could not open '" + file + "': " + ex);
+            return false;
+        }
+        if (!top.isJsonObject()) {
+            System.err.println("config error in '" + file + "': must be JSON object");
+            return false;
+        }
+        JsonObject obj = top.getAsJsonObject();
+        return !obj.has("vision") || Main.readVisionConfig(obj.get("vision").getAsJsonObject());
+    }
+
+    /**
+     * Opens the frames named on the command line.
+     */
+    private static ReplayFrameSource openFrames(String frames, double fps, Size size, int count) {
+        if ("synthetic".equals(frames)) {
+            Size frameSize = size != null ? size : DEFAULT_SYNTHETIC_SIZE;
+            return new SyntheticFrameSource(count, (int) frameSize.width, (int) frameSize.height, fps);
+        }
+        File file = new File(frames);
+        if (!file.exists()) {
+            throw new IllegalArgumentException("no such file or directory: " + frames);
+        }
+        ReplayFrameSource source;
+        if (file.isDirectory()) {
+            source = new ImageDirectorySource(file, fps);
+        }
+        else if (file.getName().endsWith(BlackBox.EXTENSION)) {
+            source = new RecordingFileSource(file, fps);
+        }
+        else {
+            source = new VideoFileSource(file, fps);
+        }
+        source.setSize(size);
+        return source;
+    }
+
+    /**
+     * Reads the expected results named on the command line.
+     * @return null if they couldn't be read
+     */
+    private static ExpectedResults openExpected(String expect, ReplayFrameSource source) {
+        if ("recorded".equals(expect)) {
+            if (!(source instanceof RecordingFileSource)) {
+                System.err.println("only black box files have recorded results");
+                return null;
+            }
+            return ExpectedResults.fromRecording((RecordingFileSource) source);
+        }
+        try {
+            return ExpectedResults.fromCsv(new File(expect));
+        }
+        catch (IOException ex) {
+            System.err.println("could not read '" + expect + "': " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Runs the frames through the vision code and waits for the last result.
+     * @return the buffer the frames were handed over in
+     */
+    private static LatestFrame replay(ReplayFrameSource source, FrameGrabber.Pace pace, CsvResultSink csv,
+                                      ExpectedResults expected) {
+        Vision vision = new Vision(Vision.CameraPosition.FRONT, Main.visionConfig);
+        vision.setResultSink((frameTime, result, candidates, tracker, processNanos) -> {
+            if (csv != null) {
+                csv.resultPublished(frameTime, result, candidates, tracker, processNanos);
+            }
+            synchronized (lock) {
+                results++;
+                processing.record(processNanos);
+                if (result.found) {
+                    found++;
+                }
+                int index = source.getIndex(frameTime);
+                if (expected != null && expected.has(index)) {
+                    compared++;
+                    if (!expected.matches(index, result)) {
+                        mismatched++;
+                    }
+                }
+                if (source instanceof SyntheticFrameSource) {
+                    boolean drawn = ((SyntheticFrameSource) source).hasLine(index);
+                    if (drawn && !result.found) {
+                        missed++;
+                    }
+                    else if (!drawn && result.found) {
+                        falseLines++;
+                    }
+                }
+            }
+        });
+
+        VisionScheduler scheduler = new VisionScheduler(1);
+        FrameGrabber grabber = vision.startLineDetection(source, null, pace, scheduler, new VisionScheduler.Settings());
+        scheduler.start();
+
+        LatestFrame frames = grabber.getFrames();
+        try {
+            grabber.join();
+
+            // Wait for the frames still being processed
+            long lastDone = -1;
+            long lastProgress = System.nanoTime();
+            for (;;) {
+                long done;
+                synchronized (lock) {
+                    done = results + frames.getSkipped();
+                }
+                if (done >= frames.getPublished()) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (done != lastDone) {
+                    lastDone = done;
+                    lastProgress = now;
+                }
+                else if (now - lastProgress > STALL_NANOS) {
+                    System.err.println("processing stalled, " + (frames.getPublished() - done) + " frames without results");
+                    break;
+                }
+                Thread.sleep(10);
+            }
+        }
+        catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        return frames;
+    }
+
+}
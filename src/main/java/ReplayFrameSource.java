@@ -0,0 +1,112 @@
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import edu.wpi.first.networktables.NetworkTablesJNI;
+
+
+/**
+ * Recorded or generated frames to replay through the vision code without a camera.
+ *
+ * <p>The frames are numbered from 0 and timed as if a camera had captured them at a steady fps
+ * starting with the first read, so a frame's time gives back its number and label. Replayed in
+ * real time the times are close to the clock's, as a camera's would be. Replayed as fast as
+ * possible they drift from it, so frame deadlines shouldn't be used then. Frames can be resized
+ * to the resolution the cameras run at, since recordings are often bigger.
+ */
+public abstract class ReplayFrameSource implements FrameSource {
+
+    private final String name;
+    private final double fps;
+
+    // The frames are read into raw when they're resized
+    private Size size;
+    private Mat raw;
+
+    // Only used by the thread reading the frames
+    private long startMicros;
+    private int next;
+    private String error = "";
+
+    /**
+     * @param name the name the frames are processed under
+     * @param fps the rate the frames were captured at
+     */
+    protected ReplayFrameSource(String name, double fps) {
+        if (fps <= 0) {
+            throw new IllegalArgumentException("fps must be positive");
+        }
+        this.name = name;
+        this.fps = fps;
+    }
+
+    /**
+     * Reads the frame with the given number.
+     * @return false if there is no such frame, leaving the Mat empty if it couldn't be read
+     */
+    protected abstract boolean read(int index, Mat frame);
+
+    /**
+     * Gets what the frame with the given number is, such as its file name.
+     */
+    public abstract String getLabel(int index);
+
+    /**
+     * Resizes every frame to the given size, or not at all if null.
+     */
+    public void setSize(Size size) {
+        this.size = size;
+        if (size != null && raw == null) {
+            raw = new Mat();
+        }
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * Gets the number of the frame read with the given time.
+     */
+    public int getIndex(long frameTime) {
+        return (int) Math.round((frameTime - startMicros) * fps / 1e6);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long readFrame(Mat frame) {
+        if (next == 0) {
+            startMicros = NetworkTablesJNI.now();
+        }
+        Mat target = size != null ? raw : frame;
+        if (!read(next, target)) {
+            return END;
+        }
+        int index = next++;
+        if (target.empty()) {
+            error = "could not read " + getLabel(index);
+            return 0;
+        }
+        if (size != null) {
+            Imgproc.resize(raw, frame, size, 0, 0, Imgproc.INTER_AREA);
+        }
+        return startMicros + Math.round(index * 1e6 / fps);
+    }
+
+    @Override
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public void close() {
+        if (raw != null) {
+            raw.release();
+        }
+    }
+
+}
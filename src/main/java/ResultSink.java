@@ -0,0 +1,17 @@
+/**
+ * Gets every result a Vision publishes, on the worker thread that processed the frame.
+ */
+public interface ResultSink {
+
+    /**
+     * Called after a frame's results are published. The objects are reused for the next frame.
+     * @param frameTime the capture time of the frame
+     * @param result the line found in the frame
+     * @param candidates the best scoring contours of the frame
+     * @param tracker the tracked line after the frame
+     * @param processNanos the time from processing starting to the results being published
+     */
+    void resultPublished(long frameTime, LineResult result, LineCandidates candidates, LineTracker tracker,
+                         long processNanos);
+
+}
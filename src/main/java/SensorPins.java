@@ -0,0 +1,38 @@
+/**
+ * The trigger and echo pins of an ultrasonic distance sensor, so DistanceMonitor can run on the
+ * rPi's GPIO or on a simulated sensor.
+ */
+public interface SensorPins {
+
+    /**
+     * Called for every change of the echo pin.
+     */
+    interface EdgeListener {
+        /**
+         * @param high true for a rising edge, false for a falling one
+         * @param nanoTime the System.nanoTime() of the edge, as near as the backend can tell
+         */
+        void edge(boolean high, long nanoTime);
+    }
+
+    /**
+     * Sets the trigger pin high or low.
+     */
+    void setTrigger(boolean high);
+
+    /**
+     * Reads the echo pin.
+     */
+    boolean isEchoHigh();
+
+    /**
+     * Sets the listener called on every echo edge, or null for none.
+     */
+    void setEchoListener(EdgeListener listener);
+
+    /**
+     * Releases the pins.
+     */
+    void close();
+
+}
@@ -0,0 +1,299 @@
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+
+
+/**
+ * A simulated ultrasonic sensor, so DistanceMonitor can be tried on any machine.
+ *
+ * <p>When the trigger goes low the echo rises after the sensor's burst delay and falls after the
+ * time sound takes to reach the target and come back, plus some random jitter. The edges are
+ * delivered from their own thread, stamped when they are delivered like pi4j's, with an optional
+ * extra delay to stand in for interrupt latency that can vary from edge to edge. They can also be
+ * handed to a thread pool one by one, the way pi4j's pin listeners are run, so the falling edge can
+ * be delivered before the rising one. A target out of range gives no echo at all.
+ *
+ * <p>Sensors in the same room hear each other. Every burst reflects off the sensor's target and off
+ * an optional far reflector behind it, and a reflection reaching another sensor while that one is
+ * waiting for its own echo ends that echo early, the same as crosstalk on a real robot.
+ */
+public class SimulatedSensorPins implements SensorPins {
+
+    // Speed of sound in cm per nanosecond
+    private static final double SOUND_SPEED = 340.29 * 100 / 1e9;
+    // The time between the trigger and the echo rising, while the sensor sends its burst
+    private static final long BURST_NANOS = 450000;
+    // The range of an HC-SR04
+    private static final double MAX_DISTANCE = 400;
+
+    /**
+     * Sensors close enough to hear each other's bursts.
+     */
+    public static class Room {
+        private final List<SimulatedSensorPins> sensors = new CopyOnWriteArrayList<>();
+    }
+
+    private final Random random = new Random();
+    private final Room room;
+    private final Thread echoThread;
+    private volatile EdgeListener echoListener;
+    private volatile double distance;
+    private volatile long jitterNanos;
+    private volatile long latencyNanos;
+    private volatile long edgeJitterNanos;
+    private volatile ExecutorService edgePool;
+    private volatile double farDistance = Double.POSITIVE_INFINITY;
+    private volatile long crosstalks;
+    // The time of the last burst, 0 if none, for the others in the room
+    private volatile long burstTime;
+
+    // The last echo pulse, guarded by this
+    private boolean trigger;
+    private long pulses;
+    private long riseTime;
+    private long fallTime;
+
+    /**
+     * @param distance the distance to the target in cm
+     */
+    public SimulatedSensorPins(double distance) {
+        this(distance, null);
+    }
+
+    /**
+     * @param distance the distance to the target in cm
+     * @param room the room the sensor is in, or null for a sensor on its own
+     */
+    public SimulatedSensorPins(double distance, Room room) {
+        this.distance = distance;
+        this.room = room;
+        if (room != null) {
+            room.sensors.add(this);
+        }
+        echoThread = new Thread(this::deliverEdges, "Simulated Echo");
+        echoThread.setDaemon(true);
+        echoThread.start();
+    }
+
+    public void setDistance(double distance) {
+        this.distance = distance;
+    }
+
+    /**
+     * Sets the most the echo pulse width is randomly off by.
+     */
+    public void setJitterMicros(double jitterMicros) {
+        this.jitterNanos = (long) (jitterMicros * 1000);
+    }
+
+    /**
+     * Sets how late each edge is delivered to the listener.
+     */
+    public void setLatencyMicros(double latencyMicros) {
+        this.latencyNanos = (long) (latencyMicros * 1000);
+    }
+
+    /**
+     * Sets the most each edge is delivered later than the latency, at random.
+     */
+    public void setEdgeJitterMicros(double edgeJitterMicros) {
+        this.edgeJitterNanos = (long) (edgeJitterMicros * 1000);
+    }
+
+    /**
+     * Sets whether each edge is delivered on a thread of its own from a pool, so with enough edge
+     * jitter the edges of a short pulse can arrive out of order.
+     */
+    public synchronized void setUnordered(boolean unordered) {
+        if (unordered && edgePool == null) {
+            edgePool = Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "Simulated Edge");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        else if (!unordered && edgePool != null) {
+            edgePool.shutdown();
+            edgePool = null;
+        }
+    }
+
+    /**
+     * Sets the distance in cm to something behind the target that reflects the burst back to the
+     * other sensors in the room, after this sensor's own echo is over.
+     */
+    public void setFarDistance(double farDistance) {
+        this.farDistance = farDistance;
+    }
+
+    /**
+     * Gets the number of echoes cut short by another sensor's burst.
+     */
+    public long getCrosstalks() {
+        return crosstalks;
+    }
+
+    @Override
+    public void setTrigger(boolean high) {
+        long burstTime = 0;
+        synchronized (this) {
+            // The sensor ignores triggers until its last echo is over
+            boolean echoOver = pulses == 0 || System.nanoTime() - fallTime >= 0;
+            if (trigger && !high && echoOver) {
+                burstTime = System.nanoTime();
+                if (distance <= MAX_DISTANCE) {
+                    long width = (long) (2 * distance / SOUND_SPEED);
+                    if (jitterNanos > 0) {
+                        width += (long) ((random.nextDouble() * 2 - 1) * jitterNanos);
+                    }
+                    riseTime = burstTime + BURST_NANOS;
+                    fallTime = riseTime + Math.max(width, 0);
+                    pulses++;
+
+                    // Reflections of bursts before this one may still be on their way
+                    if (room != null) {
+                        for (SimulatedSensorPins other : room.sensors) {
+                            long otherBurst = other.burstTime;
+                            if (other != this && otherBurst != 0) {
+                                interfere(otherBurst, other.distance);
+                                interfere(otherBurst, other.farDistance);
+                            }
+                        }
+                    }
+                    notifyAll();
+                }
+                this.burstTime = burstTime;
+            }
+            trigger = high;
+        }
+
+        // Let everyone else in the room that's listening hear the reflections, outside the lock
+        // so two sensors bursting at once can't deadlock
+        if (burstTime != 0 && room != null) {
+            for (SimulatedSensorPins other : room.sensors) {
+                if (other != this) {
+                    other.hear(burstTime, distance, farDistance);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hears another sensor's burst reflected from its target and its far reflector.
+     */
+    private synchronized void hear(long burstTime, double targetDistance, double reflectorDistance) {
+        interfere(burstTime, targetDistance);
+        interfere(burstTime, reflectorDistance);
+        notifyAll();
+    }
+
+    /**
+     * Ends the echo early if a reflection of another sensor's burst arrives while it's high.
+     * Must be called while holding the lock.
+     */
+    private void interfere(long burstTime, double reflectorDistance) {
+        if (reflectorDistance > MAX_DISTANCE) {
+            return;
+        }
+        long arrival = burstTime + BURST_NANOS + (long) (2 * reflectorDistance / SOUND_SPEED);
+        if (pulses > 0 && arrival - riseTime >= 0 && arrival - fallTime < 0) {
+            fallTime = arrival;
+            crosstalks++;
+        }
+    }
+
+    @Override
+    public synchronized boolean isEchoHigh() {
+        long now = System.nanoTime();
+        return pulses > 0 && now - riseTime >= 0 && now - fallTime < 0;
+    }
+
+    @Override
+    public void setEchoListener(EdgeListener listener) {
+        this.echoListener = listener;
+    }
+
+    @Override
+    public void close() {
+        echoThread.interrupt();
+        setUnordered(false);
+        if (room != null) {
+            room.sensors.remove(this);
+        }
+    }
+
+    private void deliverEdges() {
+        long delivered = 0;
+        while (!Thread.interrupted()) {
+            long rise;
+            long fall;
+            try {
+                synchronized (this) {
+                    while (pulses == delivered) {
+                        wait();
+                    }
+                    delivered = pulses;
+                    rise = riseTime;
+                }
+                deliverEdge(true, rise);
+
+                // Another sensor's burst can still end the echo early, so keep checking the fall.
+                // wait() rounds up to whole milliseconds, so the last one is parked in short steps
+                while (true) {
+                    long remaining;
+                    synchronized (this) {
+                        fall = fallTime;
+                        remaining = fall + latencyNanos - System.nanoTime();
+                        if (remaining > 1100000) {
+                            wait((remaining - 100000) / 1000000);
+                            continue;
+                        }
+                    }
+                    if (remaining <= 100000) {
+                        break;
+                    }
+                    LockSupport.parkNanos(Math.min(remaining - 100000, 100000));
+                }
+                deliverEdge(false, fall);
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+        }
+    }
+
+    private void deliverEdge(boolean high, long edgeTime) {
+        long deliverTime = edgeTime + latencyNanos;
+        if (edgeJitterNanos > 0) {
+            deliverTime += (long) (random.nextDouble() * edgeJitterNanos);
+        }
+        ExecutorService pool = edgePool;
+        if (pool != null) {
+            long time = deliverTime;
+            pool.execute(() -> deliverAt(high, time));
+        }
+        else {
+            deliverAt(high, deliverTime);
+        }
+    }
+
+    private void deliverAt(boolean high, long deliverTime) {
+        // Sleep most of the way and spin the rest, so the edge is on time without a busy thread
+        long remaining;
+        while ((remaining = deliverTime - System.nanoTime()) > 100000) {
+            LockSupport.parkNanos(remaining - 100000);
+        }
+        while (deliverTime - System.nanoTime() > 0) {
+            // spin
+        }
+
+        EdgeListener listener = echoListener;
+        if (listener != null) {
+            listener.edge(high, System.nanoTime());
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import edu.wpi.cscore.VideoEvent;
+import edu.wpi.cscore.VideoListener;
+import edu.wpi.first.networktables.NetworkTable;
+
+
+/**
+ * Reports how long after the JVM was launched each camera was opened, connected and produced its
+ * first result, so a slow cold start after a brownout shows up on the dashboard.
+ *
+ * <p>The times are in milliseconds since the launch and are published once each. A camera is
+ * ready once it has published its first result. When the starpi.startupTest property is set,
+ * the program exits right after the first result, or with an error after that many seconds
+ * without one, which is how the startup benchmark and the class data sharing training run are
+ * timed.
+ */
+public class StartupReport {
+
+    private static final String TEST_PROPERTY = "starpi.startupTest";
+
+    private static final long launchMillis = ProcessHandle.current().info().startInstant()
+        .map(Instant::toEpochMilli)
+        .orElse(System.currentTimeMillis());
+
+    private static final Set<String> reported = ConcurrentHashMap.newKeySet();
+    private static NetworkTable table;
+    private static VideoListener listener;
+
+    private StartupReport() {
+    }
+
+    /**
+     * Checks if this run is a startup test, which exits right after the first result.
+     */
+    public static boolean isTest() {
+        return System.getProperty(TEST_PROPERTY) != null;
+    }
+
+    /**
+     * Starts reporting to the table and listening for the cameras connecting.
+     */
+    public static void start(NetworkTable startupTable) {
+        table = startupTable;
+        listener = new VideoListener(event -> report(event.name + " Connected ms"),
+            VideoEvent.Kind.kSourceConnected.getValue(), false);
+
+        String test = System.getProperty(TEST_PROPERTY);
+        if (test != null) {
+            long timeoutMillis = (long) (Double.parseDouble(test) * 1000);
+            Thread watchdog = new Thread(() -> {
+                try {
+                    Thread.sleep(timeoutMillis);
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+                System.out.println("Startup test: no result after " + test + " s");
+                System.exit(1);
+            }, "Startup Test");
+            watchdog.setDaemon(true);
+            watchdog.start();
+        }
+    }
+
+    /**
+     * Gets the time since the JVM was launched.
+     */
+    public static long getMillisSinceLaunch() {
+        return System.currentTimeMillis() - launchMillis;
+    }
+
+    /**
+     * Reports a camera opened and configured.
+     */
+    public static void cameraOpened(String name) {
+        report(name + " Opened ms");
+    }
+
+    /**
+     * Reports a camera's first published result. Only the first call for each camera does anything.
+     */
+    public static void firstResult(String name) {
+        if (!report(name + " First Result ms")) {
+            return;
+        }
+        if (table != null) {
+            table.getEntry(name + " Ready").setBoolean(true);
+        }
+        if (report("First Result ms") && System.getProperty(TEST_PROPERTY) != null) {
+            System.out.println("Startup test: first result after " + getMillisSinceLaunch() + " ms");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Publishes the time since the launch under the key, the first time only.
+     * @return true if this was the first time
+     */
+    private static boolean report(String key) {
+        if (!reported.add(key)) {
+            return false;
+        }
+        long millis = getMillisSinceLaunch();
+        System.out.println("Startup: " + key.replace(" ms", "") + " after " + millis + " ms");
+        if (table != null) {
+            table.getEntry(key).setDouble(millis);
+        }
+        return true;
+    }
+
+}
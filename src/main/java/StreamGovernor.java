@@ -0,0 +1,283 @@
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import edu.wpi.cscore.CvSink;
+import edu.wpi.cscore.VideoMode;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+
+/**
+ * Keeps a stream under a bandwidth budget by stepping it along a ladder of quality, resolution
+ * and fps.
+ *
+ * <p>cscore doesn't count the bytes it sends, so once a period the governor grabs a frame from the
+ * streamed camera and encodes it the way the stream does to estimate the frame size, which times the
+ * stream's fps is its bitrate. The top of the ladder passes the camera's own JPEGs through without
+ * any caps, so a stream that fits the budget isn't transcoded at all, and its bitrate is the
+ * camera's data rate. Over the budget it steps down until the bitrate fits, right away,
+ * since frozen video is worse than blurry video. It only steps back up after holding a level for a
+ * while and if the better level would fit with some margin, so it doesn't flap. Nothing is measured
+ * while nobody watches, so an on demand camera isn't kept open.
+ *
+ * <p>The stream's resolution always follows the ladder from the first camera's mode, so switching
+ * to a camera with a different mode doesn't change what the clients get and they don't have to
+ * reconnect. Such a camera is scaled to the first one's size at the top of the ladder.
+ */
+public class StreamGovernor extends Thread {
+
+    /**
+     * A step of the ladder, relative to the first camera's mode. An fps of 0 and a quality of -1
+     * are no cap.
+     */
+    private static class Level {
+        final double scale;
+        final int fps;
+        final int quality;
+
+        Level(double scale, int fps, int quality) {
+            this.scale = scale;
+            this.fps = fps;
+            this.quality = quality;
+        }
+    }
+
+    // From best to worst, lowering quality first since it's the least noticed
+    private static final Level[] LADDER = {
+        new Level(1.0, 0, -1),
+        new Level(1.0, 30, 80),
+        new Level(1.0, 30, 60),
+        new Level(1.0, 20, 50),
+        new Level(0.5, 20, 60),
+        new Level(0.5, 15, 50),
+        new Level(0.5, 10, 40),
+        new Level(0.25, 10, 40),
+        new Level(0.25, 5, 30),
+    };
+
+    private static final long PERIOD_MILLIS = 1000;
+    private static final double GRAB_TIMEOUT_SECONDS = 0.5;
+    // The smallest stream width, so the worst levels of a small camera are still useful
+    private static final int MIN_WIDTH = 40;
+    // Periods a level is held before trying a better one
+    private static final int UPGRADE_HOLD = 3;
+    // The share of the budget a better level has to fit in to be tried
+    private static final double UPGRADE_MARGIN = 0.8;
+
+    private final StreamPolicy policy;
+    private final double budgetMbps;
+    private final CvSink sink;
+
+    // Only used by the governor thread
+    private final Mat frame = new Mat();
+    private final Mat scaled = new Mat();
+    private final MatOfByte jpeg = new MatOfByte();
+
+    // Guarded by this
+    private VideoMode reference;
+    private int level;
+    private int held;
+    private int appliedWidth;
+    private int appliedHeight;
+    private int appliedFps;
+    private int appliedQuality;
+
+    private volatile VideoSource source;
+    private volatile double estimatedMbps;
+
+    private final NetworkTableEntry budgetEntry;
+    private final NetworkTableEntry estimatedEntry;
+    private final NetworkTableEntry levelEntry;
+    private final NetworkTableEntry qualityEntry;
+    private final NetworkTableEntry widthEntry;
+    private final NetworkTableEntry heightEntry;
+    private final NetworkTableEntry fpsEntry;
+
+    /**
+     * @param name the name of the stream
+     * @param policy the stream's policy, which the caps are set through
+     * @param budgetMbps the most the stream may send in megabits per second
+     * @param table the table to publish to
+     */
+    public StreamGovernor(String name, StreamPolicy policy, double budgetMbps, NetworkTable table) {
+        super("Stream Governor " + name);
+        setDaemon(true);
+        this.policy = policy;
+        this.budgetMbps = budgetMbps;
+        this.sink = new CvSink(name + " Governor");
+        this.sink.setEnabled(false);
+
+        budgetEntry = table.getEntry("Budget Mbps");
+        // StreamPolicy publishes its own estimate as Est Mbps in the same table
+        estimatedEntry = table.getEntry("Governor Est Mbps");
+        levelEntry = table.getEntry("Level");
+        qualityEntry = table.getEntry("Quality");
+        widthEntry = table.getEntry("Width");
+        heightEntry = table.getEntry("Height");
+        fpsEntry = table.getEntry("Max FPS");
+        budgetEntry.setDouble(budgetMbps);
+    }
+
+    /**
+     * Switches the stream to another camera, keeping the current level.
+     */
+    public void setSource(VideoSource source) {
+        this.source = source;
+        sink.setSource(source);
+        policy.getServer().setSource(source);
+        synchronized (this) {
+            // Set the caps before the new camera's first frame goes out
+            if (source != null) {
+                if (reference == null) {
+                    reference = source.getVideoMode();
+                }
+                apply();
+            }
+        }
+    }
+
+    /**
+     * Gets the bitrate estimated for the current level, from one frame a period rather than the
+     * bytes actually sent.
+     */
+    public double getEstimatedMbps() {
+        return estimatedMbps;
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            try {
+                Thread.sleep(PERIOD_MILLIS);
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            govern();
+        }
+    }
+
+    private void govern() {
+        VideoSource current = source;
+        boolean watched = policy.isWatched();
+        sink.setEnabled(watched && current != null);
+        if (!watched || current == null) {
+            estimatedMbps = 0;
+            synchronized (this) {
+                publish();
+            }
+            return;
+        }
+
+        // Grab without the lock, so switching cameras never waits for it
+        if (sink.grabFrame(frame, GRAB_TIMEOUT_SECONDS) == 0 || frame.empty()) {
+            return;
+        }
+        synchronized (this) {
+            adjust(current);
+        }
+    }
+
+    /**
+     * Moves along the ladder for the frame just grabbed.
+     */
+    private void adjust(VideoSource current) {
+        double cameraFps = current.getActualFPS();
+        double mbps = measure(level, current, cameraFps);
+
+        // Step down at once until it fits
+        while (mbps > budgetMbps && level < LADDER.length - 1) {
+            level++;
+            held = 0;
+            mbps = measure(level, current, cameraFps);
+        }
+
+        // Step up one level at a time once this one has held
+        if (level > 0 && mbps <= budgetMbps && ++held >= UPGRADE_HOLD) {
+            held = 0;
+            double better = measure(level - 1, current, cameraFps);
+            if (better <= budgetMbps * UPGRADE_MARGIN) {
+                level--;
+                mbps = better;
+            }
+        }
+
+        estimatedMbps = mbps;
+        apply();
+        publish();
+    }
+
+    /**
+     * Measures the bitrate the current frame would give at a level.
+     */
+    private double measure(int index, VideoSource current, double cameraFps) {
+        Level step = LADDER[index];
+        if (isPassthrough(step, current.getVideoMode())) {
+            // The camera's own JPEGs go out as they are
+            return current.getActualDataRate() * 8 / 1e6;
+        }
+        int quality = step.quality >= 0 ? step.quality : StreamPolicy.DEFAULT_COMPRESSION;
+        Size size = new Size(width(step, reference), height(step, reference));
+        Imgproc.resize(frame, scaled, size, 0, 0, Imgproc.INTER_AREA);
+        MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+        Imgcodecs.imencode(".jpg", scaled, jpeg, params);
+        params.release();
+        double fps = step.fps == 0 ? cameraFps : cameraFps > 0 ? Math.min(step.fps, cameraFps) : step.fps;
+        return jpeg.total() * 8 * fps / 1e6;
+    }
+
+    /**
+     * Checks if a level passes a camera's frames through untouched, which needs the camera to send
+     * JPEGs of the first camera's size.
+     */
+    private boolean isPassthrough(Level step, VideoMode mode) {
+        return step.fps == 0 && step.quality < 0 && mode.pixelFormat == VideoMode.PixelFormat.kMJPEG
+            && mode.width == reference.width && mode.height == reference.height;
+    }
+
+    private static int width(Level step, VideoMode mode) {
+        return Math.min(Math.max((int) Math.round(mode.width * step.scale), MIN_WIDTH), mode.width);
+    }
+
+    private static int height(Level step, VideoMode mode) {
+        return Math.max((int) Math.round(mode.height * width(step, mode) / (double) mode.width), 1);
+    }
+
+    /**
+     * Sets the stream's caps to the current level, if they changed.
+     */
+    private void apply() {
+        Level step = LADDER[level];
+        int width = width(step, reference);
+        int height = height(step, reference);
+        // Without a resolution cap a camera the first one's size keeps its own, so it isn't scaled
+        VideoSource current = source;
+        if (step.scale == 1.0 && current != null) {
+            VideoMode mode = current.getVideoMode();
+            if (mode.width == width && mode.height == height) {
+                width = 0;
+                height = 0;
+            }
+        }
+        if (width != appliedWidth || height != appliedHeight || step.fps != appliedFps
+                || step.quality != appliedQuality) {
+            policy.setCaps(step.fps, width, height, step.quality);
+            appliedWidth = width;
+            appliedHeight = height;
+            appliedFps = step.fps;
+            appliedQuality = step.quality;
+        }
+    }
+
+    private void publish() {
+        estimatedEntry.setDouble(estimatedMbps);
+        levelEntry.setDouble(level);
+        qualityEntry.setDouble(appliedQuality);
+        widthEntry.setDouble(appliedWidth);
+        heightEntry.setDouble(appliedHeight);
+        fpsEntry.setDouble(appliedFps);
+    }
+
+}
@@ -0,0 +1,263 @@
+import org.opencv.core.*;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import edu.wpi.cscore.MjpegServer;
+import edu.wpi.cscore.VideoEvent;
+import edu.wpi.cscore.VideoListener;
+import edu.wpi.cscore.VideoMode;
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+
+/**
+ * Caps an MJPEG stream separately from its camera and reports what it costs.
+ *
+ * <p>cscore only sends frames to a stream while a client is watching it, but a camera kept open
+ * keeps capturing even if nothing else uses it. On demand, the camera is only opened while some
+ * sink needs it, which is always for the vision cameras and only while somebody watches (directly
+ * or through a switched camera) for the rest. The stream's fps, resolution and compression can be
+ * capped below the camera's. An fps cap costs nothing, but a camera frame that isn't already a
+ * JPEG of the stream's size and compression has to be decoded, scaled and encoded again.
+ *
+ * <p>Once a telemetry period the stream publishes whether it's watched, its fps, and estimates of
+ * its bandwidth and the share of a core spent transcoding it. A passed through frame is as big as
+ * the camera's. A transcoded one is estimated from encoding a test image of the stream's size
+ * once, so the estimates are rough but follow the caps.
+ */
+public class StreamPolicy {
+
+    /**
+     * The caps of a stream, 0 or -1 for none.
+     */
+    public static class Settings {
+        // Only open the camera while some sink needs it
+        public boolean onDemand = true;
+        public int maxFps = 0;
+        public int width = 0;
+        public int height = 0;
+        // JPEG quality from 0 to 100, -1 to pass the camera's through
+        public int compression = -1;
+    }
+
+    // The quality cscore encodes at when the client doesn't ask for one
+    static final int DEFAULT_COMPRESSION = 80;
+    private static final int CALIBRATION_RUNS = 5;
+
+    private final MjpegServer server;
+    private final VideoSource camera;
+    private final Settings settings;
+    private final VideoListener listener;
+
+    // Only used by the cscore listener thread
+    private VideoMode calibratedMode;
+    private int calibratedWidth;
+    private int calibratedHeight;
+    private int calibratedCompression;
+    private double transcodeMillis;
+    private double transcodedBytes;
+
+    private volatile boolean watched;
+
+    private final NetworkTableEntry watchedEntry;
+    private final NetworkTableEntry fpsEntry;
+    private final NetworkTableEntry transcodingEntry;
+    private final NetworkTableEntry bandwidthEntry;
+    private final NetworkTableEntry cpuEntry;
+
+    /**
+     * Applies the caps to the stream and starts reporting. The camera is left as it is until
+     * startOnDemand.
+     * @param server the stream
+     * @param camera the camera streamed, or null if the source changes (a switched camera)
+     * @param settings the caps
+     * @param table the table to publish to
+     */
+    public StreamPolicy(MjpegServer server, VideoSource camera, Settings settings, NetworkTable table) {
+        this.server = server;
+        this.camera = camera;
+        this.settings = settings;
+
+        applyCaps();
+        server.setDefaultCompression(DEFAULT_COMPRESSION);
+
+        watchedEntry = table.getEntry("Watched");
+        fpsEntry = table.getEntry("Stream FPS");
+        transcodingEntry = table.getEntry("Transcoding");
+        bandwidthEntry = table.getEntry("Est Mbps");
+        cpuEntry = table.getEntry("Est CPU %");
+
+        int events = VideoEvent.Kind.kSinkEnabled.getValue()
+            | VideoEvent.Kind.kSinkDisabled.getValue()
+            | VideoEvent.Kind.kTelemetryUpdated.getValue();
+        listener = new VideoListener(this::handleEvent, events, true);
+    }
+
+    /**
+     * Lets an on demand camera close while no sink needs it. Until then it's kept open, so it
+     * doesn't close and reopen while the vision sinks are still being set up.
+     */
+    public void startOnDemand() {
+        if (camera != null) {
+            camera.setConnectionStrategy(settings.onDemand
+                ? VideoSource.ConnectionStrategy.kAutoManage
+                : VideoSource.ConnectionStrategy.kKeepOpen);
+        }
+    }
+
+    private void applyCaps() {
+        // 0 and -1 are cscore's own values for no cap, so a cap taken off goes back to passthrough
+        server.setFPS(Math.max(settings.maxFps, 0));
+        if (settings.width > 0 && settings.height > 0) {
+            server.setResolution(settings.width, settings.height);
+        }
+        else {
+            server.setResolution(0, 0);
+        }
+        server.setCompression(settings.compression >= 0 ? settings.compression : -1);
+    }
+
+    /**
+     * Changes the caps of a running stream. Its clients keep their connections. 0 or -1 takes a
+     * cap off, as in Settings.
+     */
+    public synchronized void setCaps(int maxFps, int width, int height, int compression) {
+        settings.maxFps = maxFps;
+        settings.width = width;
+        settings.height = height;
+        settings.compression = compression;
+        applyCaps();
+    }
+
+    public MjpegServer getServer() {
+        return server;
+    }
+
+    public boolean isWatched() {
+        return watched;
+    }
+
+    private void handleEvent(VideoEvent event) {
+        switch (event.kind) {
+            case kSinkEnabled:
+                if (event.sinkHandle == server.getHandle()) {
+                    watched = true;
+                }
+                break;
+            case kSinkDisabled:
+                if (event.sinkHandle == server.getHandle()) {
+                    watched = false;
+                }
+                break;
+            case kTelemetryUpdated:
+                report();
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Publishes what the stream is costing.
+     */
+    private synchronized void report() {
+        VideoSource source = server.getSource();
+        if (source == null || !source.isValid()) {
+            return;
+        }
+        VideoMode mode = source.getVideoMode();
+        double cameraFps = source.getActualFPS();
+
+        int width = settings.width > 0 && settings.height > 0 ? settings.width : mode.width;
+        int height = settings.width > 0 && settings.height > 0 ? settings.height : mode.height;
+        boolean transcoding = mode.pixelFormat != VideoMode.PixelFormat.kMJPEG
+            || width != mode.width || height != mode.height
+            || settings.compression >= 0;
+
+        double fps = 0;
+        if (watched) {
+            fps = settings.maxFps > 0 ? Math.min(settings.maxFps, cameraFps) : cameraFps;
+        }
+
+        double bytesPerFrame;
+        double cpu = 0;
+        if (transcoding) {
+            int compression = settings.compression >= 0 ? settings.compression : DEFAULT_COMPRESSION;
+            calibrate(mode, width, height, compression);
+            bytesPerFrame = transcodedBytes;
+            cpu = fps * transcodeMillis / 10;
+        }
+        else {
+            bytesPerFrame = cameraFps > 0 ? source.getActualDataRate() / cameraFps : 0;
+        }
+
+        watchedEntry.setBoolean(watched);
+        fpsEntry.setDouble(fps);
+        transcodingEntry.setBoolean(transcoding);
+        bandwidthEntry.setDouble(bytesPerFrame * fps * 8 / 1e6);
+        cpuEntry.setDouble(cpu);
+    }
+
+    /**
+     * Times decoding a camera frame, scaling it and encoding it at the stream's size, once for
+     * every camera mode, size and compression the stream is seen with.
+     */
+    private void calibrate(VideoMode mode, int width, int height, int compression) {
+        if (calibratedMode != null && calibratedMode.pixelFormat == mode.pixelFormat
+                && calibratedMode.width == mode.width && calibratedMode.height == mode.height
+                && width == calibratedWidth && height == calibratedHeight
+                && compression == calibratedCompression) {
+            return;
+        }
+        calibratedMode = mode;
+        calibratedWidth = width;
+        calibratedHeight = height;
+        calibratedCompression = compression;
+
+        // Smooth noise compresses more like a camera frame than plain noise or a flat image
+        Mat noise = new Mat(Math.max(mode.height / 8, 1), Math.max(mode.width / 8, 1), CvType.CV_8UC3);
+        Core.randu(noise, 0, 256);
+        Mat frame = new Mat();
+        Imgproc.resize(noise, frame, new Size(mode.width, mode.height), 0, 0, Imgproc.INTER_LINEAR);
+        MatOfByte cameraJpeg = new MatOfByte();
+        Imgcodecs.imencode(".jpg", frame, cameraJpeg);
+
+        MatOfInt params = new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, compression);
+        MatOfByte streamJpeg = new MatOfByte();
+        Mat decoded = new Mat();
+        Mat scaled = new Mat();
+        // The first runs are slow, so keep the fastest of a few
+        transcodeMillis = Double.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_RUNS; i++) {
+            long start = System.nanoTime();
+            if (mode.pixelFormat == VideoMode.PixelFormat.kMJPEG) {
+                decoded.release();
+                decoded = Imgcodecs.imdecode(cameraJpeg, Imgcodecs.IMREAD_COLOR);
+            }
+            else {
+                frame.copyTo(decoded);
+            }
+            Imgproc.resize(decoded, scaled, new Size(width, height), 0, 0, Imgproc.INTER_AREA);
+            Imgcodecs.imencode(".jpg", scaled, streamJpeg, params);
+            transcodeMillis = Math.min(transcodeMillis, (System.nanoTime() - start) / 1e6);
+        }
+        transcodedBytes = streamJpeg.total();
+
+        noise.release();
+        frame.release();
+        cameraJpeg.release();
+        params.release();
+        streamJpeg.release();
+        decoded.release();
+        scaled.release();
+    }
+
+    /**
+     * Stops reporting.
+     */
+    public void close() {
+        listener.close();
+    }
+
+}
@@ -0,0 +1,103 @@
+import java.util.Locale;
+import java.util.Random;
+
+import org.opencv.core.*;
+import org.opencv.imgproc.Imgproc;
+
+
+/**
+ * Generates frames of a white line on a noisy floor, moving and turning along a known path, so
+ * detection and throughput can be checked without any recordings.
+ *
+ * <p>The line sweeps across the frame and back every cycle and is left out for a stretch of every
+ * fourth cycle, so losing and finding it again is covered too. The same count and size always give
+ * the same frames. Each frame's label is where the line was drawn, with the angle as OpenCV's
+ * RotatedRect takes it, or "none".
+ */
+public class SyntheticFrameSource extends ReplayFrameSource {
+
+    // Frames for the line to sweep across and back
+    private static final int CYCLE = 90;
+    // The floor's darkest value and how much brighter the noise makes it
+    private static final int FLOOR = 60;
+    private static final int FLOOR_NOISE = 40;
+    private static final long SEED = 2019;
+
+    private final int count;
+    private final int width;
+    private final int height;
+    private final Mat floor;
+    private final Point[] corners = new Point[4];
+    private final MatOfPoint polygon = new MatOfPoint();
+    private final Scalar lineColor = new Scalar(245, 245, 245);
+
+    /**
+     * @param count the number of frames
+     * @param width the width of the frames
+     * @param height the height of the frames
+     * @param fps the rate to replay them at in real time
+     */
+    public SyntheticFrameSource(int count, int width, int height, double fps) {
+        super("synthetic", fps);
+        this.count = count;
+        this.width = width;
+        this.height = height;
+
+        byte[] noise = new byte[width * height * 3];
+        Random random = new Random(SEED);
+        for (int i = 0; i < noise.length; i++) {
+            noise[i] = (byte) (FLOOR + random.nextInt(FLOOR_NOISE));
+        }
+        floor = new Mat(height, width, CvType.CV_8UC3);
+        floor.put(0, 0, noise);
+    }
+
+    /**
+     * Checks if the line is drawn in the frame with the given number.
+     */
+    public boolean hasLine(int index) {
+        return index / CYCLE % 4 != 3 || index % CYCLE < CYCLE / 2;
+    }
+
+    /**
+     * Gets where the line is drawn in the frame with the given number, drawn or not.
+     */
+    public RotatedRect getLine(int index) {
+        double phase = 2 * Math.PI * index / CYCLE;
+        Point center = new Point(width / 2.0 + width / 4.0 * Math.sin(phase),
+            height / 2.0 + height / 6.0 * Math.sin(2 * phase));
+        Size size = new Size(height * 0.6, Math.max(height * 0.08, 3));
+        return new RotatedRect(center, size, 60 * Math.sin(0.5 * phase) - 90);
+    }
+
+    @Override
+    protected boolean read(int index, Mat frame) {
+        if (index >= count) {
+            return false;
+        }
+        floor.copyTo(frame);
+        if (hasLine(index)) {
+            getLine(index).points(corners);
+            polygon.fromArray(corners);
+            Imgproc.fillConvexPoly(frame, polygon, lineColor);
+        }
+        return true;
+    }
+
+    @Override
+    public String getLabel(int index) {
+        if (!hasLine(index)) {
+            return "none";
+        }
+        RotatedRect line = getLine(index);
+        return String.format(Locale.ROOT, "x=%.1f y=%.1f angle=%.1f", line.center.x, line.center.y, line.angle);
+    }
+
+    @Override
+    public void close() {
+        floor.release();
+        polygon.release();
+        super.close();
+    }
+
+}
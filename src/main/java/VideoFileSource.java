@@ -0,0 +1,49 @@
+import java.io.File;
+
+import org.opencv.core.Mat;
+import org.opencv.videoio.VideoCapture;
+import org.opencv.videoio.Videoio;
+
+
+/**
+ * Replays a recorded video file. OpenCV reads MJPEG AVI files itself, other formats need it built
+ * with a video library.
+ */
+public class VideoFileSource extends ReplayFrameSource {
+
+    private final VideoCapture capture;
+
+    /**
+     * @param file the video file, such as an MJPEG AVI
+     * @param defaultFps the rate to replay it at in real time if the file doesn't say
+     */
+    public VideoFileSource(File file, double defaultFps) {
+        this(file, new VideoCapture(file.getPath()), defaultFps);
+    }
+
+    private VideoFileSource(File file, VideoCapture capture, double defaultFps) {
+        super(file.getName(), capture.get(Videoio.CAP_PROP_FPS) > 0 ? capture.get(Videoio.CAP_PROP_FPS) : defaultFps);
+        this.capture = capture;
+        if (!capture.isOpened()) {
+            throw new IllegalArgumentException("could not open " + file.getPath());
+        }
+    }
+
+    @Override
+    protected boolean read(int index, Mat frame) {
+        // A frame that can't be decoded ends the video, since there's no telling where the next one starts
+        return capture.read(frame) && !frame.empty();
+    }
+
+    @Override
+    public String getLabel(int index) {
+        return "frame " + index;
+    }
+
+    @Override
+    public void close() {
+        capture.release();
+        super.close();
+    }
+
+}
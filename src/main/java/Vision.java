@@ -2,8 +2,8 @@
 import java.util.ArrayList;
 
 import edu.wpi.cscore.VideoSource;
-import edu.wpi.first.vision.VisionThread;
-import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTablesJNI;
 
 import org.opencv.core.*;
 import org.opencv.imgproc.*;
@@ -15,6 +15,16 @@ public class Vision {
         FRONT, LEFT, RIGHT
     }
 
+    /**
+     * The ways the line's rotated rectangle can be found.
+     */
+    public enum GeometryEngine {
+        // Imgproc.minAreaRect on a floating point copy of the contour
+        OPENCV,
+        // Rotating calipers on the contour's points in primitive buffers, see ContourPoints
+        JAVA
+    }
+
     public enum Quadrant {
         UPPERLEFT, UPPERRIGHT, LOWERLEFT, LOWERRIGHT;
 
@@ -44,122 +54,437 @@ public class Vision {
     }
 
     public CameraPosition camPosition;
+    public Main.VisionConfig config;
+
+    // Reused by findLineRect on every frame
+    private final MatOfPoint2f contour2f = new MatOfPoint2f();
+    private final ContourPoints contourPoints = new ContourPoints();
+    private final RotatedRect lineRect = new RotatedRect();
+    private final LineResult result = new LineResult();
+    private LineCandidates candidates;
+    private LineTracker tracker;
+    private double nextNativeMemoryTime = 0;
+    private VisionScheduler.Job<LinePipeline> job;
+    private long unchangedFrames;
+    private boolean firstResultPublished;
+    private volatile ResultSink resultSink;
+    private VisionLog log;
+    private int logCamera;
+    private boolean lineFound;
+
+    // How often the native memory gauge is published
+    private static final double NATIVE_MEMORY_PERIOD = 1.0;
+    // How much the search region's margin grows after each frame without a line
+    private static final double REGION_GROWTH = 2.0;
 
     public Vision(CameraPosition position) {
+        this(position, new Main.VisionConfig());
+    }
+
+    public Vision(CameraPosition position, Main.VisionConfig config) {
         this.camPosition = position;
+        this.config = config;
     }
 
+    /**
+     * Starts line detection on its own worker thread.
+     */
     public void startLineDetection(VideoSource cam) {
-        Timer piTimer = new Timer();
-        piTimer.reset();
-        piTimer.start();
+        VisionScheduler scheduler = new VisionScheduler(1);
+        startLineDetection(cam, scheduler, new VisionScheduler.Settings());
+        scheduler.start();
+    }
+
+    /**
+     * Starts capturing from the camera and adds line detection to the scheduler.
+     * The scheduler still has to be started.
+     */
+    public void startLineDetection(VideoSource cam, VisionScheduler scheduler, VisionScheduler.Settings settings) {
+        startLineDetection(new CameraFrameSource(cam), cam, FrameGrabber.Pace.LIVE, scheduler, settings);
+    }
+
+    /**
+     * Starts grabbing frames from the source and adds line detection to the scheduler.
+     * The scheduler still has to be started.
+     * @param source where the frames come from
+     * @param cam the camera the frames come from, used to count dropped frames; may be null
+     * @param pace how the frames are handed over for processing
+     * @return the thread grabbing the frames
+     */
+    public FrameGrabber startLineDetection(FrameSource source, VideoSource cam, FrameGrabber.Pace pace,
+                                           VisionScheduler scheduler, VisionScheduler.Settings settings) {
+        String name = source.getName();
+        long startNanos = System.nanoTime();
+        if (log != null) {
+            logCamera = log.addCamera(name);
+        }
 
         double minimumArea = (Vision.Quadrant.totalHeight / 3) ^ 2;
 
-        VisionThread visionThread = new VisionThread(cam, new LinePipeline(), pipeline -> {
+        LinePipeline linePipeline = new LinePipeline();
+        linePipeline.setThresholdEngine(config.thresholdEngine, config.lookupBits);
+        linePipeline.setPyramidLevels(config.pyramidLevels);
+        candidates = new LineCandidates(config.candidates);
+        tracker = new LineTracker(config.trackAlpha, config.trackBeta, config.trackCoastMillis);
+        if (config.changeThreshold > 0) {
+            linePipeline.setChangeDetector(new FrameChangeDetector(config.changeThreshold, config.changeMaxSkips));
+        }
+        RegionTracker regionTracker = config.regionTracking ? new RegionTracker(config.regionMargin, REGION_GROWTH, config.regionMisses) : null;
+
+        NetworkTable metricsTable = Brain.metricsTable != null ? Brain.metricsTable.getSubTable(name) : null;
+        VisionMetrics metrics = new VisionMetrics(metricsTable, cam);
+        metrics.setMaxFps(settings.maxFps);
+
+        FrameGrabber grabber = new FrameGrabber(source, pace);
+        LatestFrame frames = grabber.getFrames();
+
+        job = scheduler.add(name, frames, linePipeline, settings, (pipeline, frameTime) -> {
+            long geometryStart = System.nanoTime();
             ArrayList<MatOfPoint> output = pipeline.filterContoursOutput();
             int outputSize = output.size();
-            switch (camPosition) {
-                case FRONT:
-                    Brain.setFrontLineContours(outputSize);
-                    break;
-                case LEFT:
-                    Brain.setLeftLineContours(outputSize);
-                    break;
-                case RIGHT:
-                    Brain.setRightLineContours(outputSize);
-                    break;
+            if (pipeline.isUnchanged()) {
+                // Nothing was processed, so the last result still stands
+                result.restamp(frameTime);
+                unchangedFrames++;
             }
-            // We can only work with one contour
-            if (outputSize == 1) {
-                // System.out.println(elapsedTime + " : " + camName + " -> One contour identified, checking minimum size...");
-                MatOfPoint contour = output.get(0);
-
-                // Get the rotated rectangle
-                Point[] points = contour.toArray();
-                MatOfPoint2f contour2f = new MatOfPoint2f(points);
-                RotatedRect rotRect = Imgproc.minAreaRect(contour2f);
-
-                // Get the area of the rotated rectangle
-                double area = rotRect.size.area();
-                if (area >= minimumArea) {
-                    // Get the center X & Y of the bounding rectangle
-                    Rect boundRect = rotRect.boundingRect();
-                    double centerX = boundRect.x + (boundRect.width / 2);
-                    double centerY = boundRect.y + (boundRect.height / 2);
-
-                    // Get the rotation angle of the rotated rectangle
-                    double angle = rotRect.angle;
-                    if (rotRect.size.width < rotRect.size.height) {
-                        angle = 90 + angle;
+            else {
+                metrics.record(VisionMetrics.Stage.THRESHOLD, pipeline.getThresholdNanos());
+                metrics.record(VisionMetrics.Stage.CONTOURS, pipeline.getFindContoursNanos());
+                metrics.record(VisionMetrics.Stage.FILTER, pipeline.getFilterContoursNanos());
+
+                result.reset(frameTime, outputSize);
+                Rect lineBounds = null;
+
+                // Use the best scoring contour
+                candidates.rank(output, pipeline.getFrameWidth(), pipeline.getFrameHeight());
+                if (candidates.getCount() > 0) {
+                    MatOfPoint contour = output.get(candidates.getIndex(0));
+
+                    // Get the rotated rectangle
+                    RotatedRect rotRect;
+                    if (config.geometryEngine == GeometryEngine.JAVA) {
+                        rotRect = findLineRect(contour, contourPoints, lineRect);
                     }
-                    Quadrant centerQuad = Quadrant.getQuadrant(centerX, centerY);
-                    switch (centerQuad) {
-                        case UPPERLEFT:
-                                break;
-                        case UPPERRIGHT:
-                                break;
-                        case LOWERLEFT:
-                                if (angle > 0) angle = angle - 180;
-                                break;
-                        case LOWERRIGHT:
-                                if (angle < 0) angle = angle + 180;
-                                break;
+                    else {
+                        rotRect = findLineRect(contour, contour2f);
                     }
 
-                    // Add the values to NetworkTables via the Brain
-                    switch (camPosition) {
-                        case FRONT:
-                            Brain.setFrontLineArea(area);
-                            Brain.setFrontLineAngle(angle);
-                            Brain.setFrontLineXcenter(centerX);
-                            Brain.setFrontLineYcenter(centerY);
-                            break;
-                        case LEFT:
-                            Brain.setLeftLineArea(area);
-                            Brain.setLeftLineAngle(angle);
-                            Brain.setLeftLineXcenter(centerX);
-                            Brain.setLeftLineYcenter(centerY);
-                            break;
-                        case RIGHT:
-                            Brain.setRightLineArea(area);
-                            Brain.setRightLineAngle(angle);
-                            Brain.setRightLineXcenter(centerX);
-                            Brain.setRightLineYcenter(centerY);
-                            break;
+                    // Get the area of the rotated rectangle
+                    double area = rotRect.size.area();
+                    if (area >= minimumArea) {
+                        // Get the center X & Y of the bounding rectangle
+                        Rect boundRect = rotRect.boundingRect();
+                        lineBounds = boundRect;
+                        double centerX = boundRect.x + (boundRect.width / 2);
+                        double centerY = boundRect.y + (boundRect.height / 2);
+
+                        // Get the rotation angle of the rotated rectangle
+                        double angle = findLineAngle(rotRect, centerX, centerY);
+                        result.setLine(area, angle, centerX, centerY);
                     }
-                    String camName = cam.getName();
-                    double elapsedTime = piTimer.get();
-                    System.out.println(camName + " -> Line Detected! : " + elapsedTime);
+                }
+                if (lineBounds != null) {
+                    candidates.setPrevious(0);
+                }
+                else {
+                    candidates.clearPrevious();
+                }
+
+                // Only search around the line in the next frame
+                if (regionTracker != null) {
+                    if (lineBounds != null) {
+                        regionTracker.hit(lineBounds);
+                    }
+                    else {
+                        regionTracker.miss();
+                    }
+                    pipeline.setRegion(regionTracker.getRegion());
                 }
             }
+
+            // Smooth the line over time, coasting through frames without it
+            if (result.found) {
+                tracker.hit(frameTime, result.centerX, result.centerY, result.angle);
+            }
             else {
-                // We can't work with these contours, so set everything to default
-                switch (camPosition) {
-                    case FRONT:
-                        Brain.setFrontLineArea(Brain.frontLineAreaDefault);
-                        Brain.setFrontLineAngle(Brain.frontLineAngleDefault);
-                        Brain.setFrontLineXcenter(Brain.frontLineXcenterDefault);
-                        Brain.setFrontLineYcenter(Brain.frontLineYcenterDefault);
-                        break;
-                    case LEFT:
-                        Brain.setLeftLineArea(Brain.leftLineAreaDefault);
-                        Brain.setLeftLineAngle(Brain.leftLineAngleDefault);
-                        Brain.setLeftLineXcenter(Brain.leftLineXcenterDefault);
-                        Brain.setLeftLineYcenter(Brain.leftLineYcenterDefault);
-                        break;
-                    case RIGHT:
-                        Brain.setRightLineArea(Brain.rightLineAreaDefault);
-                        Brain.setRightLineAngle(Brain.rightLineAngleDefault);
-                        Brain.setRightLineXcenter(Brain.rightLineXcenterDefault);
-                        Brain.setRightLineYcenter(Brain.rightLineYcenterDefault);
-                        break;
+                tracker.miss(frameTime);
+            }
+
+            // Add the values to NetworkTables via the Brain
+            long publishStart = System.nanoTime();
+            if (!pipeline.isUnchanged()) {
+                metrics.record(VisionMetrics.Stage.GEOMETRY, publishStart - geometryStart);
+            }
+            publishResult(result);
+            publishCandidates(candidates);
+            publishTrack(tracker);
+            if (config.legacyEntries) {
+                publishContours(outputSize);
+                publishTimestamp(frameTime);
+                if (result.found) {
+                    publishLine(result.area, result.angle, result.centerX, result.centerY);
+                }
+                else if (outputSize != 1) {
+                    // We can't work with these contours, so set everything to default
+                    publishDefaults();
+                }
+            }
+            Brain.flushResults();
+            if (!firstResultPublished) {
+                firstResultPublished = true;
+                StartupReport.firstResult(name);
+            }
+            ResultSink sink = resultSink;
+            if (sink != null) {
+                sink.resultPublished(frameTime, result, candidates, tracker, System.nanoTime() - pipeline.getProcessStartNanos());
+            }
+
+            // Log the line, and every time it's found or lost
+            if (log != null) {
+                if (result.found) {
+                    log.log(lineFound ? VisionLog.Type.LINE : VisionLog.Type.FOUND, logCamera, result);
                 }
+                else if (lineFound) {
+                    log.log(VisionLog.Type.LOST, logCamera, result);
+                }
+            }
+            lineFound = result.found;
 
-                // TODO: consider checking all the contours, and if only one meets the minimum area requirements, use that
+            double now = (System.nanoTime() - startNanos) / 1e9;
+            if (now >= nextNativeMemoryTime) {
+                nextNativeMemoryTime = now + NATIVE_MEMORY_PERIOD;
+                publishNativeMemory(pipeline.nativeBytes() + MatPool.nativeBytes(contour2f));
+            }
+
+            long end = System.nanoTime();
+            metrics.record(VisionMetrics.Stage.PUBLISH, end - publishStart);
+            metrics.record(VisionMetrics.Stage.TOTAL, end - pipeline.getProcessStartNanos());
+            metrics.record(VisionMetrics.Stage.CAPTURE_TO_PUBLISH, (NetworkTablesJNI.now() - frameTime) * 1000);
+            metrics.setSkippedFrames(frames.getSkipped());
+            metrics.setDeadlineDrops(job.getDeadlineDrops());
+            metrics.setUnchangedFrames(unchangedFrames);
+            if (metrics.frameDone(end) && config.latencyTest) {
+                LatencyHistogram latency = metrics.getHistogram(VisionMetrics.Stage.CAPTURE_TO_PUBLISH);
+                System.out.printf("%s capture to publish: p50 %.2f ms, p99 %.2f ms, max %.2f ms%n", name,
+                    latency.getPercentile(50) / 1e6, latency.getPercentile(99) / 1e6, latency.getMax() / 1e6);
             }
         });
-        visionThread.start();
+        grabber.start();
+        return grabber;
+    }
+
+    /**
+     * Sets the log to record the results in, or null for none. Only call this before starting.
+     */
+    public void setLog(VisionLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Sets something to get every result after it's published, or null for nothing.
+     */
+    public void setResultSink(ResultSink sink) {
+        this.resultSink = sink;
+    }
+
+    /**
+     * Publishes the whole result of a frame as one entry.
+     */
+    private void publishResult(LineResult result) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineResult(result.toArray());
+                break;
+            case LEFT:
+                Brain.setLeftLineResult(result.toArray());
+                break;
+            case RIGHT:
+                Brain.setRightLineResult(result.toArray());
+                break;
+        }
+    }
+
+    /**
+     * Publishes the best scoring contours of a frame.
+     */
+    private void publishCandidates(LineCandidates candidates) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineCandidates(candidates.toArray());
+                break;
+            case LEFT:
+                Brain.setLeftLineCandidates(candidates.toArray());
+                break;
+            case RIGHT:
+                Brain.setRightLineCandidates(candidates.toArray());
+                break;
+        }
+    }
+
+    /**
+     * Publishes the tracked line.
+     */
+    private void publishTrack(LineTracker tracker) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineTrack(tracker.toArray());
+                break;
+            case LEFT:
+                Brain.setLeftLineTrack(tracker.toArray());
+                break;
+            case RIGHT:
+                Brain.setRightLineTrack(tracker.toArray());
+                break;
+        }
+    }
+
+    /**
+     * Publishes the number of contours that passed the filter.
+     */
+    private void publishContours(int contours) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineContours(contours);
+                break;
+            case LEFT:
+                Brain.setLeftLineContours(contours);
+                break;
+            case RIGHT:
+                Brain.setRightLineContours(contours);
+                break;
+        }
+    }
+
+    /**
+     * Publishes the capture time of the frame the results came from, in microseconds on the Pi's
+     * NetworkTables clock. ClockSync publishes the offset to the robot's clock.
+     */
+    private void publishTimestamp(long frameTime) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineTimestamp(frameTime);
+                break;
+            case LEFT:
+                Brain.setLeftLineTimestamp(frameTime);
+                break;
+            case RIGHT:
+                Brain.setRightLineTimestamp(frameTime);
+                break;
+        }
+    }
+
+    /**
+     * Publishes a detected line.
+     */
+    private void publishLine(double area, double angle, double centerX, double centerY) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineArea(area);
+                Brain.setFrontLineAngle(angle);
+                Brain.setFrontLineXcenter(centerX);
+                Brain.setFrontLineYcenter(centerY);
+                break;
+            case LEFT:
+                Brain.setLeftLineArea(area);
+                Brain.setLeftLineAngle(angle);
+                Brain.setLeftLineXcenter(centerX);
+                Brain.setLeftLineYcenter(centerY);
+                break;
+            case RIGHT:
+                Brain.setRightLineArea(area);
+                Brain.setRightLineAngle(angle);
+                Brain.setRightLineXcenter(centerX);
+                Brain.setRightLineYcenter(centerY);
+                break;
+        }
+    }
+
+    /**
+     * Publishes the default values when no line could be used.
+     */
+    private void publishDefaults() {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontLineArea(Brain.frontLineAreaDefault);
+                Brain.setFrontLineAngle(Brain.frontLineAngleDefault);
+                Brain.setFrontLineXcenter(Brain.frontLineXcenterDefault);
+                Brain.setFrontLineYcenter(Brain.frontLineYcenterDefault);
+                break;
+            case LEFT:
+                Brain.setLeftLineArea(Brain.leftLineAreaDefault);
+                Brain.setLeftLineAngle(Brain.leftLineAngleDefault);
+                Brain.setLeftLineXcenter(Brain.leftLineXcenterDefault);
+                Brain.setLeftLineYcenter(Brain.leftLineYcenterDefault);
+                break;
+            case RIGHT:
+                Brain.setRightLineArea(Brain.rightLineAreaDefault);
+                Brain.setRightLineAngle(Brain.rightLineAngleDefault);
+                Brain.setRightLineXcenter(Brain.rightLineXcenterDefault);
+                Brain.setRightLineYcenter(Brain.rightLineYcenterDefault);
+                break;
+        }
+    }
+
+    /**
+     * Publishes the bytes of native image data held for this camera.
+     */
+    private void publishNativeMemory(long bytes) {
+        switch (camPosition) {
+            case FRONT:
+                Brain.setFrontNativeMemory(bytes);
+                break;
+            case LEFT:
+                Brain.setLeftNativeMemory(bytes);
+                break;
+            case RIGHT:
+                Brain.setRightNativeMemory(bytes);
+                break;
+        }
+    }
+
+    /**
+     * Fits the minimum area rotated rectangle around a contour.
+     * @param contour the contour
+     * @param contour2f a Mat reused to hold the floating point copy of the contour
+     */
+    static RotatedRect findLineRect(MatOfPoint contour, MatOfPoint2f contour2f) {
+        contour.convertTo(contour2f, CvType.CV_32F);
+        return Imgproc.minAreaRect(contour2f);
+    }
+
+    /**
+     * Fits the minimum area rotated rectangle around a contour without leaving primitive arrays.
+     * @param contour the contour
+     * @param points reused to hold the contour's points
+     * @param out where the rectangle is stored
+     */
+    static RotatedRect findLineRect(MatOfPoint contour, ContourPoints points, RotatedRect out) {
+        points.read(contour);
+        return points.minAreaRect(out);
+    }
+
+    /**
+     * Gets the angle of the line described by the rotated rectangle, adjusted for the quadrant its center is in.
+     */
+    static double findLineAngle(RotatedRect rotRect, double centerX, double centerY) {
+        double angle = rotRect.angle;
+        if (rotRect.size.width < rotRect.size.height) {
+            angle = 90 + angle;
+        }
+        Quadrant centerQuad = Quadrant.getQuadrant(centerX, centerY);
+        switch (centerQuad) {
+            case UPPERLEFT:
+                    break;
+            case UPPERRIGHT:
+                    break;
+            case LOWERLEFT:
+                    if (angle > 0) angle = angle - 180;
+                    break;
+            case LOWERRIGHT:
+                    if (angle < 0) angle = angle + 180;
+                    break;
+        }
+        return angle;
     }
 
 }
@@ -0,0 +1,343 @@
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import edu.wpi.first.networktables.NetworkTablesJNI;
+
+
+/**
+ * Logs vision results to CSV files from a background thread, so the vision threads never format
+ * text or wait on the SD card.
+ *
+ * <p>A record is a few numbers copied into a slot of a ring claimed with a compare and set, so
+ * logging takes no lock and allocates nothing, and several vision workers can log at once. If the
+ * writer falls behind and the ring is full the record is dropped and counted. Each type of record
+ * is rate limited for each camera, and the records left out are counted in the next one let
+ * through. The writer wakes a few times a second, writes everything queued and flushes, and starts
+ * a new file once the current one reaches its size limit, keeping a few of the last ones.
+ */
+public class VisionLog extends Thread {
+
+    /**
+     * The kinds of records.
+     */
+    public enum Type {
+        // A frame the line was found in
+        LINE("line"),
+        // The line was found in a frame after one without it
+        FOUND("found"),
+        // The line wasn't found in a frame after one with it
+        LOST("lost"),
+        // Records were dropped because the ring was full
+        OVERFLOW("overflow");
+
+        public final String label;
+
+        Type(String label) {
+            this.label = label;
+        }
+    }
+
+    public static final String FILE_NAME = "vision.csv";
+
+    // Type.values() makes a new array every call
+    private static final Type[] TYPES = Type.values();
+
+    private static final String HEADER = "type,camera,sequence,frame time us,log time us,contours,area,angle,"
+        + "center x,center y,suppressed";
+    private static final int CAPACITY = 1024;
+    private static final long WRITE_PERIOD_MILLIS = 200;
+
+    private final File dir;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final CopyOnWriteArrayList<String> cameras = new CopyOnWriteArrayList<>();
+
+    // The ring. A slot is claimed by its record's number and belongs to the writer once the number
+    // plus one is published for it.
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+    private volatile long consumed;
+    private final int[] types = new int[CAPACITY];
+    private final int[] sources = new int[CAPACITY];
+    private final long[] sequences = new long[CAPACITY];
+    private final long[] frameTimes = new long[CAPACITY];
+    private final long[] logTimes = new long[CAPACITY];
+    private final int[] contours = new int[CAPACITY];
+    private final double[] values = new double[CAPACITY * 4];
+    private final long[] suppressedCounts = new long[CAPACITY];
+    private final AtomicLong dropped = new AtomicLong();
+
+    // The rate limits, one per type, and the time each camera and type may next log at
+    private final long[] intervalNanos = new long[TYPES.length];
+    private final long[] burstNanos = new long[TYPES.length];
+    private volatile AtomicLongArray allowedAt = new AtomicLongArray(0);
+    private volatile AtomicLongArray suppressed = new AtomicLongArray(0);
+
+    // Only used by the writer thread
+    private BufferedWriter writer;
+    private long fileBytes;
+    private long droppedWritten;
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * @param dir the directory to write to
+     * @param maxBytes the size a file is rolled over at
+     * @param maxFiles the number of files kept, counting the current one
+     */
+    public VisionLog(File dir, long maxBytes, int maxFiles) {
+        super("Vision Log");
+        setDaemon(true);
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(maxFiles, 1);
+        for (Type type : TYPES) {
+            setRate(type, 0, 0);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::writeQueued, "Vision Log Shutdown"));
+    }
+
+    /**
+     * Limits how often a type of record is logged for each camera. Only call this before logging.
+     * @param type the type of record
+     * @param perSecond the records per second let through on average, 0 for no limit
+     * @param burst the records let through at once after a quiet time
+     */
+    public void setRate(Type type, double perSecond, int burst) {
+        intervalNanos[type.ordinal()] = perSecond > 0 ? (long) (1e9 / perSecond) : 0;
+        burstNanos[type.ordinal()] = intervalNanos[type.ordinal()] * Math.max(burst - 1, 0);
+    }
+
+    /**
+     * Adds a camera to log for. Only call this before logging.
+     * @return the camera's number to log with
+     */
+    public synchronized int addCamera(String name) {
+        cameras.add(name);
+        int count = cameras.size() * TYPES.length;
+        long now = System.nanoTime();
+        AtomicLongArray allowed = new AtomicLongArray(count);
+        for (int i = 0; i < count; i++) {
+            allowed.set(i, now);
+        }
+        allowedAt = allowed;
+        suppressed = new AtomicLongArray(count);
+        return cameras.size() - 1;
+    }
+
+    /**
+     * Logs a result, unless its type is over its rate limit for the camera or the ring is full.
+     * @param type the type of record
+     * @param camera the camera's number from addCamera
+     * @param result the result to log
+     * @return true if it was queued
+     */
+    public boolean log(Type type, int camera, LineResult result) {
+        long now = System.nanoTime();
+        int limit = camera * TYPES.length + type.ordinal();
+        if (!allow(limit, type.ordinal(), now)) {
+            suppressed.incrementAndGet(limit);
+            return false;
+        }
+
+        long number = claim();
+        if (number < 0) {
+            return false;
+        }
+        int i = (int) (number % CAPACITY);
+        types[i] = type.ordinal();
+        sources[i] = camera;
+        sequences[i] = result.sequence;
+        frameTimes[i] = result.timestamp;
+        logTimes[i] = NetworkTablesJNI.now();
+        contours[i] = result.contours;
+        values[i * 4] = result.area;
+        values[i * 4 + 1] = result.angle;
+        values[i * 4 + 2] = result.centerX;
+        values[i * 4 + 3] = result.centerY;
+        suppressedCounts[i] = suppressed.getAndSet(limit, 0);
+        published.set(i, number + 1);
+        return true;
+    }
+
+    /**
+     * Checks a camera's type of record against its rate limit, the way a token bucket would but
+     * with only the time the next record is allowed at.
+     */
+    private boolean allow(int limit, int type, long now) {
+        long interval = intervalNanos[type];
+        if (interval == 0) {
+            return true;
+        }
+        for (;;) {
+            long at = allowedAt.get(limit);
+            long start = at - now < -burstNanos[type] ? now - burstNanos[type] : at;
+            if (start - now > 0) {
+                return false;
+            }
+            if (allowedAt.compareAndSet(limit, at, start + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claims the next slot of the ring.
+     * @return the record's number, or -1 if the ring is full
+     */
+    private long claim() {
+        for (;;) {
+            long number = claimed.get();
+            if (number - consumed >= CAPACITY) {
+                dropped.incrementAndGet();
+                return -1;
+            }
+            if (claimed.compareAndSet(number, number + 1)) {
+                return number;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of records dropped because the ring was full.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    @Override
+    public void run() {
+        for (;;) {
+            try {
+                Thread.sleep(WRITE_PERIOD_MILLIS);
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            writeQueued();
+        }
+    }
+
+    /**
+     * Writes every record published so far and flushes the file.
+     */
+    private synchronized void writeQueued() {
+        try {
+            long droppedNow = dropped.get();
+            if (droppedNow != droppedWritten) {
+                writeOverflow(droppedNow - droppedWritten);
+                droppedWritten = droppedNow;
+            }
+            for (;;) {
+                long number = consumed;
+                int i = (int) (number % CAPACITY);
+                if (published.get(i) != number + 1) {
+                    break;
+                }
+                write(i);
+                consumed = number + 1;
+            }
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+        catch (IOException ex) {
+            System.err.println("Vision log: could not write: " + ex);
+            closeFile();
+        }
+    }
+
+    private void write(int i) throws IOException {
+        line.setLength(0);
+        line.append(TYPES[types[i]].label).append(',')
+            .append(cameras.get(sources[i])).append(',')
+            .append(sequences[i]).append(',')
+            .append(frameTimes[i]).append(',')
+            .append(logTimes[i]).append(',')
+            .append(contours[i]).append(',');
+        appendValue(values[i * 4], 1);
+        appendValue(values[i * 4 + 1], 2);
+        appendValue(values[i * 4 + 2], 1);
+        appendValue(values[i * 4 + 3], 1);
+        line.append(suppressedCounts[i]);
+        writeLine();
+    }
+
+    private void writeOverflow(long count) throws IOException {
+        line.setLength(0);
+        line.append(Type.OVERFLOW.label).append(",,,,").append(NetworkTablesJNI.now()).append(",,,,,,").append(count);
+        writeLine();
+    }
+
+    private void appendValue(double value, int decimals) {
+        line.append(String.format(Locale.ROOT, "%." + decimals + "f", value)).append(',');
+    }
+
+    /**
+     * Writes the line, rolling the files over first if it would go past the size limit.
+     */
+    private void writeLine() throws IOException {
+        if (writer != null && fileBytes + line.length() + 1 > maxBytes) {
+            closeFile();
+            roll();
+        }
+        if (writer == null) {
+            openFile();
+        }
+        writer.append(line).append('\n');
+        fileBytes += line.length() + 1;
+    }
+
+    private void openFile() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("could not create " + dir);
+        }
+        File file = new File(dir, FILE_NAME);
+        fileBytes = file.length();
+        writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (fileBytes == 0) {
+            writer.write(HEADER);
+            writer.write('\n');
+            fileBytes = HEADER.length() + 1;
+        }
+    }
+
+    private void closeFile() {
+        if (writer != null) {
+            try {
+                writer.close();
+            }
+            catch (IOException ex) {
+                System.err.println("Vision log: could not close: " + ex);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Moves vision.csv to vision.1.csv, vision.1.csv to vision.2.csv and so on, deleting the oldest.
+     */
+    private void roll() throws IOException {
+        Files.deleteIfExists(rolledFile(maxFiles - 1).toPath());
+        for (int k = maxFiles - 2; k >= 0; k--) {
+            File from = rolledFile(k);
+            if (from.exists()) {
+                Files.move(from.toPath(), rolledFile(k + 1).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private File rolledFile(int k) {
+        return new File(dir, k == 0 ? FILE_NAME : FILE_NAME.replace(".csv", "." + k + ".csv"));
+    }
+
+}
@@ -0,0 +1,206 @@
+import edu.wpi.cscore.VideoSource;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableEntry;
+
+
+/**
+ * Per-camera timing of the vision stages, published periodically to NetworkTables.
+ *
+ * <p>Each stage keeps a rolling window of latencies and publishes its p50, p99 and max in
+ * milliseconds. The achieved FPS is compared with the FPS cscore sees from the camera, or the
+ * scheduler's FPS cap if that's lower, to count the frames the vision thread never got to, and the
+ * frames the FrameGrabber replaced before they were processed are published as skipped. Frames
+ * held back by the cap are only counted as skipped, since they aren't a sign of falling behind. Frames the VisionScheduler dropped for missing their
+ * deadline are published too, as are the frames skipped for being unchanged. Only the thread
+ * running the camera's job uses an instance.
+ */
+public class VisionMetrics {
+
+    /**
+     * The timed stages of a frame.
+     */
+    public enum Stage {
+        THRESHOLD("Threshold"),
+        CONTOURS("Find Contours"),
+        FILTER("Filter Contours"),
+        GEOMETRY("Geometry"),
+        PUBLISH("Publish"),
+        TOTAL("Total"),
+        // From the camera capturing the frame to its result being published
+        CAPTURE_TO_PUBLISH("Capture To Publish");
+
+        public final String label;
+
+        Stage(String label) {
+            this.label = label;
+        }
+    }
+
+    // About 10 seconds of frames at 30 fps
+    private static final int WINDOW = 300;
+    private static final long PUBLISH_PERIOD_NANOS = 1000000000L;
+
+    private final VideoSource source;
+    private double maxFps;
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+    // NetworkTables entries, null if not publishing
+    private final NetworkTableEntry[] p50Entries = new NetworkTableEntry[Stage.values().length];
+    private final NetworkTableEntry[] p99Entries = new NetworkTableEntry[Stage.values().length];
+    private final NetworkTableEntry[] maxEntries = new NetworkTableEntry[Stage.values().length];
+    private final NetworkTableEntry fpsEntry;
+    private final NetworkTableEntry cameraFpsEntry;
+    private final NetworkTableEntry framesEntry;
+    private final NetworkTableEntry droppedEntry;
+    private final NetworkTableEntry skippedEntry;
+    private final NetworkTableEntry deadlineDropsEntry;
+    private final NetworkTableEntry unchangedEntry;
+
+    private long frames;
+    private long periodFrames;
+    private long periodStart = System.nanoTime();
+    private double droppedFrames;
+    private long skippedFrames;
+    private long deadlineDrops;
+    private long unchangedFrames;
+    private double fps;
+
+    /**
+     * @param table the table to publish to, or null to only collect
+     * @param source the camera, used to count dropped frames; may be null
+     */
+    public VisionMetrics(NetworkTable table, VideoSource source) {
+        this.source = source;
+        for (Stage stage : Stage.values()) {
+            histograms[stage.ordinal()] = new LatencyHistogram(WINDOW);
+            if (table != null) {
+                p50Entries[stage.ordinal()] = table.getEntry(stage.label + " p50 ms");
+                p99Entries[stage.ordinal()] = table.getEntry(stage.label + " p99 ms");
+                maxEntries[stage.ordinal()] = table.getEntry(stage.label + " max ms");
+            }
+        }
+        if (table != null) {
+            fpsEntry = table.getEntry("FPS");
+            cameraFpsEntry = table.getEntry("Camera FPS");
+            framesEntry = table.getEntry("Frames");
+            droppedEntry = table.getEntry("Dropped Frames");
+            skippedEntry = table.getEntry("Skipped Frames");
+            deadlineDropsEntry = table.getEntry("Deadline Drops");
+            unchangedEntry = table.getEntry("Skipped Unchanged");
+        }
+        else {
+            fpsEntry = null;
+            cameraFpsEntry = null;
+            framesEntry = null;
+            droppedEntry = null;
+            skippedEntry = null;
+            deadlineDropsEntry = null;
+            unchangedEntry = null;
+        }
+    }
+
+    /**
+     * Sets the FPS the camera's frames are processed at no faster than, 0 for no cap.
+     */
+    public void setMaxFps(double maxFps) {
+        this.maxFps = maxFps;
+    }
+
+    /**
+     * Records how long a stage took on the current frame.
+     */
+    public void record(Stage stage, long nanos) {
+        histograms[stage.ordinal()].record(nanos);
+    }
+
+    public LatencyHistogram getHistogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public long getFrames() {
+        return frames;
+    }
+
+    public long getDroppedFrames() {
+        return (long) droppedFrames;
+    }
+
+    /**
+     * Sets the number of captured frames replaced by a newer frame before they were processed.
+     */
+    public void setSkippedFrames(long skippedFrames) {
+        this.skippedFrames = skippedFrames;
+    }
+
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    /**
+     * Sets the number of frames dropped for being older than the deadline when processing started.
+     */
+    public void setDeadlineDrops(long deadlineDrops) {
+        this.deadlineDrops = deadlineDrops;
+    }
+
+    public long getDeadlineDrops() {
+        return deadlineDrops;
+    }
+
+    /**
+     * Sets the number of frames not processed because they were unchanged from the last one.
+     */
+    public void setUnchangedFrames(long unchangedFrames) {
+        this.unchangedFrames = unchangedFrames;
+    }
+
+    public long getUnchangedFrames() {
+        return unchangedFrames;
+    }
+
+    public double getFps() {
+        return fps;
+    }
+
+    /**
+     * Counts a finished frame, publishing the metrics if the period is up.
+     * @param now the current System.nanoTime()
+     * @return true if the metrics were published
+     */
+    public boolean frameDone(long now) {
+        frames++;
+        periodFrames++;
+        long elapsed = now - periodStart;
+        if (elapsed < PUBLISH_PERIOD_NANOS) {
+            return false;
+        }
+
+        double seconds = elapsed / 1e9;
+        fps = periodFrames / seconds;
+        double cameraFps = source != null ? source.getActualFPS() : 0;
+        double expectedFps = maxFps > 0 ? Math.min(cameraFps, maxFps) : cameraFps;
+        if (expectedFps > fps) {
+            droppedFrames += (expectedFps - fps) * seconds;
+        }
+        periodFrames = 0;
+        periodStart = now;
+
+        if (fpsEntry != null) {
+            for (Stage stage : Stage.values()) {
+                LatencyHistogram histogram = histograms[stage.ordinal()];
+                p50Entries[stage.ordinal()].setDouble(histogram.getPercentile(50) / 1e6);
+                p99Entries[stage.ordinal()].setDouble(histogram.getPercentile(99) / 1e6);
+                maxEntries[stage.ordinal()].setDouble(histogram.getMax() / 1e6);
+            }
+            fpsEntry.setDouble(fps);
+            cameraFpsEntry.setDouble(cameraFps);
+            framesEntry.setDouble(frames);
+            droppedEntry.setDouble(getDroppedFrames());
+            skippedEntry.setDouble(skippedFrames);
+            deadlineDropsEntry.setDouble(deadlineDrops);
+            unchangedEntry.setDouble(unchangedFrames);
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,204 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.wpi.first.networktables.NetworkTablesJNI;
+import edu.wpi.first.vision.VisionPipeline;
+
+
+/**
+ * Runs the pipelines of all the cameras on a fixed number of worker threads.
+ *
+ * <p>Each camera is added as a job with a priority, a rate cap and a deadline. A free worker runs
+ * the highest priority job that has a fresh frame and is not over its rate cap, taking the job
+ * that ran least recently when priorities are equal. A job only ever runs on one worker at a
+ * time, so its pipeline and listener never need to be thread safe. A frame that is already older
+ * than its job's deadline when a worker gets to it is dropped, since its result would be too late
+ * to use and the next frame is already on its way.
+ */
+public class VisionScheduler {
+
+    /**
+     * Called on the worker thread after a job's pipeline has processed a frame.
+     */
+    public interface Listener<P extends VisionPipeline> {
+        void copyPipelineOutputs(P pipeline, long frameTime);
+    }
+
+    /**
+     * How a camera is scheduled.
+     */
+    @SuppressWarnings("MemberName")
+    public static class Settings {
+        // Higher runs first
+        public int priority = 0;
+        // Frames per second, 0 for no cap
+        public double maxFps = 0;
+        // Maximum age of a frame when processing starts, 0 for no deadline
+        public double deadlineMillis = 0;
+    }
+
+    /**
+     * A camera's pipeline and the frames it processes.
+     */
+    public static final class Job<P extends VisionPipeline> {
+        private final String name;
+        private final LatestFrame frames;
+        private final P pipeline;
+        private final Listener<? super P> listener;
+        private final int priority;
+        private final long minPeriodNanos;
+        private final long deadlineMicros;
+
+        // Guarded by the scheduler
+        private boolean running;
+        private long lastStartNanos;
+        private long nextStartNanos;
+
+        // Only changed by the worker running the job
+        private volatile long deadlineDrops;
+
+        private Job(String name, LatestFrame frames, P pipeline, Settings settings, Listener<? super P> listener) {
+            this.name = name;
+            this.frames = frames;
+            this.pipeline = pipeline;
+            this.listener = listener;
+            this.priority = settings.priority;
+            this.minPeriodNanos = settings.maxFps > 0 ? (long) (1e9 / settings.maxFps) : 0;
+            this.deadlineMicros = (long) (settings.deadlineMillis * 1000);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Gets the number of frames dropped for being older than the deadline.
+         */
+        public long getDeadlineDrops() {
+            return deadlineDrops;
+        }
+
+        private void runOnce() {
+            if (!frames.poll()) {
+                return;
+            }
+            long frameTime = frames.getReadTime();
+            if (deadlineMicros > 0 && NetworkTablesJNI.now() - frameTime > deadlineMicros) {
+                deadlineDrops++;
+                return;
+            }
+            pipeline.process(frames.getReadMat());
+            listener.copyPipelineOutputs(pipeline, frameTime);
+        }
+    }
+
+    private final List<Job<?>> jobs = new ArrayList<>();
+    private final Thread[] workers;
+
+    /**
+     * @param workers the number of worker threads
+     */
+    public VisionScheduler(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be at least 1");
+        }
+        this.workers = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            this.workers[i] = new Thread(this::work, "Vision Worker " + i);
+            this.workers[i].setDaemon(true);
+        }
+    }
+
+    /**
+     * Adds a camera's pipeline to be run on the frames it captures.
+     */
+    public synchronized <P extends VisionPipeline> Job<P> add(String name, LatestFrame frames, P pipeline,
+                                                            Settings settings, Listener<? super P> listener) {
+        Job<P> job = new Job<>(name, frames, pipeline, settings, listener);
+        jobs.add(job);
+        frames.setPublishListener(this::frameArrived);
+        return job;
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public void start() {
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    public int getWorkers() {
+        return workers.length;
+    }
+
+    private synchronized void frameArrived() {
+        notifyAll();
+    }
+
+    private void work() {
+        while (!Thread.interrupted()) {
+            Job<?> job;
+            try {
+                job = nextJob();
+            }
+            catch (InterruptedException ex) {
+                return;
+            }
+            try {
+                job.runOnce();
+            }
+            catch (RuntimeException ex) {
+                System.err.println(Thread.currentThread().getName() + ": " + job.name + " failed: " + ex);
+                ex.printStackTrace();
+            }
+            finally {
+                synchronized (this) {
+                    job.running = false;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for a job that is ready to run and claims it.
+     */
+    private synchronized Job<?> nextJob() throws InterruptedException {
+        for (;;) {
+            long now = System.nanoTime();
+            Job<?> best = null;
+            long wakeAt = Long.MAX_VALUE;
+            for (Job<?> job : jobs) {
+                if (job.running || !job.frames.hasFresh()) {
+                    continue;
+                }
+                if (job.nextStartNanos - now > 0) {
+                    wakeAt = Math.min(wakeAt, job.nextStartNanos);
+                    continue;
+                }
+                if (best == null || job.priority > best.priority
+                        || (job.priority == best.priority && job.lastStartNanos - best.lastStartNanos < 0)) {
+                    best = job;
+                }
+            }
+
+            if (best != null) {
+                best.running = true;
+                best.lastStartNanos = now;
+                best.nextStartNanos = now + best.minPeriodNanos;
+                return best;
+            }
+
+            // Wait for a frame, a job to finish, or the next rate capped job to come due
+            if (wakeAt == Long.MAX_VALUE) {
+                wait(250);
+            }
+            else {
+                wait(Math.max(1, (wakeAt - now) / 1000000));
+            }
+        }
+    }
+
+}